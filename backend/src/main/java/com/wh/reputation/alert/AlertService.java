@@ -38,12 +38,12 @@ public class AlertService {
             return;
         }
 
-        WindowStats overallCurrent = loadOverallStats(productId, window.currentStart(), window.currentEndExclusive());
-        WindowStats overallPrev = loadOverallStats(productId, window.prevStart(), window.prevEndExclusive());
+        WindowStats overallCurrent = loadOverallStats(productId, window.currentStartDate(), window.currentEndDate());
+        WindowStats overallPrev = loadOverallStats(productId, window.prevStartDate(), window.prevEndDate());
         maybeInsertAlert(productId, "negRate", null, window, overallCurrent.negRate(), overallPrev.negRate(), DEFAULT_THRESHOLD);
 
-        Map<Long, WindowStats> aspectCurrent = loadAspectStats(productId, window.currentStart(), window.currentEndExclusive());
-        Map<Long, WindowStats> aspectPrev = loadAspectStats(productId, window.prevStart(), window.prevEndExclusive());
+        Map<Long, WindowStats> aspectCurrent = loadAspectStats(productId, window.currentStartDate(), window.currentEndDate());
+        Map<Long, WindowStats> aspectPrev = loadAspectStats(productId, window.prevStartDate(), window.prevEndDate());
         for (Map.Entry<Long, WindowStats> entry : aspectCurrent.entrySet()) {
             Long aspectId = entry.getKey();
             WindowStats cur = entry.getValue();
@@ -186,12 +186,12 @@ public class AlertService {
 
     private DateWindow resolveWindow(Long productId, LocalDate start, LocalDate end) {
         LocalDate minDate = jdbcTemplate.queryForObject(
-                "select min(date(coalesce(review_time, created_at))) from review where product_id = ?",
+                "select min(stat_date) from daily_sentiment_rollup where product_id = ? and aspect_id = 0",
                 (rs, rowNum) -> rs.getDate(1) == null ? null : rs.getDate(1).toLocalDate(),
                 productId
         );
         LocalDate maxDate = jdbcTemplate.queryForObject(
-                "select max(date(coalesce(review_time, created_at))) from review where product_id = ?",
+                "select max(stat_date) from daily_sentiment_rollup where product_id = ? and aspect_id = 0",
                 (rs, rowNum) -> rs.getDate(1) == null ? null : rs.getDate(1).toLocalDate(),
                 productId
         );
@@ -225,23 +225,23 @@ public class AlertService {
         return new DateWindow(currentStart, currentEnd, prevStart, prevEnd);
     }
 
-    private WindowStats loadOverallStats(Long productId, LocalDateTime start, LocalDateTime endExclusive) {
+    private WindowStats loadOverallStats(Long productId, LocalDate start, LocalDate end) {
         List<Object> params = new ArrayList<>();
-        StringBuilder where = new StringBuilder(" where r.product_id = ?");
+        StringBuilder where = new StringBuilder(" where d.product_id = ? and d.aspect_id = 0");
         params.add(productId);
         if (start != null) {
-            where.append(" and coalesce(r.review_time, r.created_at) >= ?");
-            params.add(Timestamp.valueOf(start));
+            where.append(" and d.stat_date >= ?");
+            params.add(toSqlDate(start));
         }
-        if (endExclusive != null) {
-            where.append(" and coalesce(r.review_time, r.created_at) < ?");
-            params.add(Timestamp.valueOf(endExclusive));
+        if (end != null) {
+            where.append(" and d.stat_date <= ?");
+            params.add(toSqlDate(end));
         }
 
         String sql = """
-                select count(*) as total,
-                       sum(case when r.overall_sentiment_label = 'NEG' then 1 else 0 end) as negCnt
-                from review r
+                select coalesce(sum(d.total), 0) as total,
+                       coalesce(sum(d.neg_cnt), 0) as negCnt
+                from daily_sentiment_rollup d
                 """ + where;
 
         return jdbcTemplate.queryForObject(sql, (rs, rowNum) -> new WindowStats(
@@ -250,26 +250,26 @@ public class AlertService {
         ), params.toArray());
     }
 
-    private Map<Long, WindowStats> loadAspectStats(Long productId, LocalDateTime start, LocalDateTime endExclusive) {
+    private Map<Long, WindowStats> loadAspectStats(Long productId, LocalDate start, LocalDate end) {
         List<Object> params = new ArrayList<>();
         StringBuilder sql = new StringBuilder("""
-                select rar.aspect_id as aspectId,
-                       count(*) as total,
-                       sum(case when rar.sentiment_label = 'NEG' then 1 else 0 end) as negCnt
-                from review_aspect_result rar
-                join review r on r.id = rar.review_id
-                where r.product_id = ?
+                select d.aspect_id as aspectId,
+                       sum(d.total) as total,
+                       sum(d.neg_cnt) as negCnt
+                from daily_sentiment_rollup d
+                where d.product_id = ?
+                  and d.aspect_id <> 0
                 """);
         params.add(productId);
         if (start != null) {
-            sql.append(" and coalesce(r.review_time, r.created_at) >= ?");
-            params.add(Timestamp.valueOf(start));
+            sql.append(" and d.stat_date >= ?");
+            params.add(toSqlDate(start));
         }
-        if (endExclusive != null) {
-            sql.append(" and coalesce(r.review_time, r.created_at) < ?");
-            params.add(Timestamp.valueOf(endExclusive));
+        if (end != null) {
+            sql.append(" and d.stat_date <= ?");
+            params.add(toSqlDate(end));
         }
-        sql.append(" group by rar.aspect_id");
+        sql.append(" group by d.aspect_id");
 
         Map<Long, WindowStats> map = new HashMap<>();
         jdbcTemplate.query(sql.toString(), (org.springframework.jdbc.core.RowCallbackHandler) rs -> map.put(
@@ -299,21 +299,5 @@ public class AlertService {
         }
     }
 
-    private record DateWindow(LocalDate currentStartDate, LocalDate currentEndDate, LocalDate prevStartDate, LocalDate prevEndDate) {
-        LocalDateTime currentStart() {
-            return currentStartDate == null ? null : currentStartDate.atStartOfDay();
-        }
-
-        LocalDateTime currentEndExclusive() {
-            return currentEndDate == null ? null : currentEndDate.plusDays(1).atStartOfDay();
-        }
-
-        LocalDateTime prevStart() {
-            return prevStartDate == null ? null : prevStartDate.atStartOfDay();
-        }
-
-        LocalDateTime prevEndExclusive() {
-            return prevEndDate == null ? null : prevEndDate.plusDays(1).atStartOfDay();
-        }
-    }
+    private record DateWindow(LocalDate currentStartDate, LocalDate currentEndDate, LocalDate prevStartDate, LocalDate prevEndDate) {}
 }
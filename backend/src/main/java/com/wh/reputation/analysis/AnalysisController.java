@@ -13,20 +13,26 @@ import java.time.format.DateTimeParseException;
 public class AnalysisController {
     private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
-    private final ReviewAnalysisService reviewAnalysisService;
+    private final AnalysisJobService analysisJobService;
+    private final RecomputeScheduler recomputeScheduler;
+    private final TokenizationService tokenizationService;
     private final AnalysisQueryService analysisQueryService;
     private final KeywordAnalysisService keywordAnalysisService;
     private final TopicAnalysisService topicAnalysisService;
     private final ClusterAnalysisService clusterAnalysisService;
 
     public AnalysisController(
-            ReviewAnalysisService reviewAnalysisService,
+            AnalysisJobService analysisJobService,
+            RecomputeScheduler recomputeScheduler,
+            TokenizationService tokenizationService,
             AnalysisQueryService analysisQueryService,
             KeywordAnalysisService keywordAnalysisService,
             TopicAnalysisService topicAnalysisService,
             ClusterAnalysisService clusterAnalysisService
     ) {
-        this.reviewAnalysisService = reviewAnalysisService;
+        this.analysisJobService = analysisJobService;
+        this.recomputeScheduler = recomputeScheduler;
+        this.tokenizationService = tokenizationService;
         this.analysisQueryService = analysisQueryService;
         this.keywordAnalysisService = keywordAnalysisService;
         this.topicAnalysisService = topicAnalysisService;
@@ -40,8 +46,23 @@ public class AnalysisController {
         }
         LocalDate start = parseDateOrNull(body.start());
         LocalDate end = parseDateOrNull(body.end());
-        reviewAnalysisService.analyzeByProduct(body.productId(), start, end);
-        return ApiResponse.ok(new AnalysisRunResponseDto(true));
+        long jobId = analysisJobService.submitProduct(body.productId(), start, end);
+        return ApiResponse.ok(new AnalysisRunResponseDto(true, jobId));
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ApiResponse<AnalysisJobDto> job(@PathVariable("id") Long id) {
+        return ApiResponse.ok(analysisJobService.get(id));
+    }
+
+    @GetMapping("/recompute/stats")
+    public ApiResponse<RecomputeStatsDto> recomputeStats() {
+        return ApiResponse.ok(recomputeScheduler.stats());
+    }
+
+    @GetMapping("/tokenize/stats")
+    public ApiResponse<TokenizationStatsDto> tokenizeStats() {
+        return ApiResponse.ok(tokenizationService.stats());
     }
 
     @GetMapping("/aspects")
@@ -0,0 +1,133 @@
+package com.wh.reputation.analysis;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@Component
+public class AnalysisDictionaries {
+    private static final Logger log = LoggerFactory.getLogger(AnalysisDictionaries.class);
+    private static final String STOPWORDS_FILE = "stopwords.txt";
+    private static final String LEXICON_FILE = "sentiment_lexicon.json";
+    private static final String USER_DICT_FILE = "user_dict.txt";
+
+    private final ObjectMapper objectMapper;
+    private final Path dir;
+    private volatile Snapshot current;
+    private String signature;
+
+    public AnalysisDictionaries(
+            ObjectMapper objectMapper,
+            @Value("${reputation.dictionary.dir:}") String dir
+    ) {
+        this.objectMapper = objectMapper;
+        this.dir = dir == null || dir.isBlank()
+                ? DataFileLocator.resolveRequired(STOPWORDS_FILE).getParent()
+                : Paths.get(dir).toAbsolutePath();
+        this.signature = signature();
+        this.current = load(1L);
+    }
+
+    Snapshot current() {
+        return current;
+    }
+
+    @Scheduled(
+            initialDelayString = "${reputation.dictionary.reload-ms:5000}",
+            fixedDelayString = "${reputation.dictionary.reload-ms:5000}"
+    )
+    public synchronized void reloadIfChanged() {
+        String next = signature();
+        if (next.equals(signature)) {
+            return;
+        }
+        Snapshot previous = current;
+        try {
+            current = load(previous.version() + 1);
+        } catch (RuntimeException e) {
+            log.warn("keeping dictionary version {}, reload from {} failed", previous.version(), dir, e);
+            return;
+        }
+        signature = next;
+        log.info("dictionaries reloaded from {}: version {}, {} stopwords, {} user terms",
+                dir, current.version(), current.stopwords().words().size(), current.userDictionary().size());
+    }
+
+    private Snapshot load(long version) {
+        Stopwords stopwords = new Stopwords(Set.copyOf(readLines(dir.resolve(STOPWORDS_FILE))));
+        SentimentLexicon lexicon = readLexicon(dir.resolve(LEXICON_FILE));
+        Path userDictPath = dir.resolve(USER_DICT_FILE);
+        UserDictionary userDictionary = Files.exists(userDictPath)
+                ? UserDictionary.of(readUserTerms(userDictPath))
+                : UserDictionary.EMPTY;
+        return new Snapshot(version, stopwords, lexicon, SentimentAnalyzer.Rules.compile(lexicon), userDictionary);
+    }
+
+    private SentimentLexicon readLexicon(Path path) {
+        try (var in = Files.newInputStream(path)) {
+            return objectMapper.readValue(in, SentimentLexicon.class);
+        } catch (IOException e) {
+            throw new IllegalStateException("failed to load sentiment lexicon: " + path, e);
+        }
+    }
+
+    private static List<String> readUserTerms(Path path) {
+        List<String> terms = new ArrayList<>();
+        for (String line : readLines(path)) {
+            if (line.startsWith("#")) {
+                continue;
+            }
+            terms.add(line.split("\\s+", 2)[0]);
+        }
+        return terms;
+    }
+
+    private static List<String> readLines(Path path) {
+        try (var lines = Files.lines(path, StandardCharsets.UTF_8)) {
+            return lines
+                    .map(String::trim)
+                    .filter(s -> !s.isBlank())
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new IllegalStateException("failed to load dictionary file: " + path, e);
+        }
+    }
+
+    private String signature() {
+        StringBuilder sb = new StringBuilder();
+        for (String name : List.of(STOPWORDS_FILE, LEXICON_FILE, USER_DICT_FILE)) {
+            Path path = dir.resolve(name);
+            sb.append(name).append(':');
+            try {
+                if (Files.exists(path)) {
+                    sb.append(Files.getLastModifiedTime(path).toMillis()).append('/').append(Files.size(path));
+                }
+            } catch (IOException e) {
+                sb.append('?');
+            }
+            sb.append(';');
+        }
+        return sb.toString();
+    }
+
+    record Snapshot(
+            long version,
+            Stopwords stopwords,
+            SentimentLexicon lexicon,
+            SentimentAnalyzer.Rules sentimentRules,
+            UserDictionary userDictionary
+    ) {}
+}
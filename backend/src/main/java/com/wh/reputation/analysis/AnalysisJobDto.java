@@ -0,0 +1,14 @@
+package com.wh.reputation.analysis;
+
+public record AnalysisJobDto(
+        Long id,
+        String type,
+        String status,
+        int processed,
+        int total,
+        double progress,
+        String error,
+        String createdAt,
+        String startedAt,
+        String finishedAt
+) {}
@@ -0,0 +1,324 @@
+package com.wh.reputation.analysis;
+
+import com.wh.reputation.common.BadRequestException;
+import com.wh.reputation.common.NotFoundException;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Service
+public class AnalysisJobService implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(AnalysisJobService.class);
+    private static final DateTimeFormatter DATETIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String TYPE_IMPORT = "IMPORT";
+    private static final String TYPE_PRODUCT = "PRODUCT";
+    private static final int MAX_ERROR_LENGTH = 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReviewAnalysisService reviewAnalysisService;
+    private final RecomputeScheduler recomputeScheduler;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService workers;
+    private final int chunkSize;
+
+    public AnalysisJobService(
+            JdbcTemplate jdbcTemplate,
+            ReviewAnalysisService reviewAnalysisService,
+            RecomputeScheduler recomputeScheduler,
+            PlatformTransactionManager transactionManager,
+            @Value("${reputation.analysis.job-workers:2}") int workerCount,
+            @Value("${reputation.analysis.job-chunk-size:500}") int chunkSize
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.reviewAnalysisService = reviewAnalysisService;
+        this.recomputeScheduler = recomputeScheduler;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = Math.max(1, chunkSize);
+
+        AtomicInteger threadSeq = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workerCount), r -> {
+            Thread t = new Thread(r, "analysis-job-" + threadSeq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        jdbcTemplate.update("update analysis_job set status = 'pending', started_at = null where status = 'running'");
+        List<Long> pending = jdbcTemplate.queryForList(
+                "select id from analysis_job where status = 'pending' order by id asc",
+                Long.class
+        );
+        for (Long jobId : pending) {
+            dispatch(jobId);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    public long submitImport(String batchId, int total) {
+        if (batchId == null || batchId.isBlank()) {
+            throw new BadRequestException("batchId is required");
+        }
+        return submit(TYPE_IMPORT, batchId, null, null, null, total);
+    }
+
+    public long submitProduct(Long productId, LocalDate start, LocalDate end) {
+        if (productId == null) {
+            throw new BadRequestException("productId is required");
+        }
+        int total = countProductReviews(productId, start, end);
+        return submit(TYPE_PRODUCT, null, productId, start, end, total);
+    }
+
+    public AnalysisJobDto get(Long id) {
+        if (id == null) {
+            throw new BadRequestException("id is required");
+        }
+        List<AnalysisJobDto> rows = jdbcTemplate.query("""
+                        select j.id as id,
+                               j.job_type as jobType,
+                               j.status as status,
+                               j.processed as processed,
+                               j.total as total,
+                               j.error as error,
+                               j.created_at as createdAt,
+                               j.started_at as startedAt,
+                               j.finished_at as finishedAt
+                        from analysis_job j
+                        where j.id = ?
+                        """,
+                (rs, rowNum) -> {
+                    int processed = rs.getInt("processed");
+                    int total = rs.getInt("total");
+                    String status = rs.getString("status");
+                    double progress = "done".equals(status) ? 1.0 : total <= 0 ? 0.0 : Math.min(1.0, (double) processed / total);
+                    return new AnalysisJobDto(
+                            rs.getLong("id"),
+                            rs.getString("jobType"),
+                            status,
+                            processed,
+                            total,
+                            progress,
+                            rs.getString("error"),
+                            formatTimestamp(rs.getTimestamp("createdAt")),
+                            formatTimestamp(rs.getTimestamp("startedAt")),
+                            formatTimestamp(rs.getTimestamp("finishedAt"))
+                    );
+                },
+                id
+        );
+        if (rows.isEmpty()) {
+            throw new NotFoundException("analysis job not found");
+        }
+        return rows.get(0);
+    }
+
+    private long submit(String type, String batchId, Long productId, LocalDate start, LocalDate end, int total) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                            insert into analysis_job (job_type, batch_id, product_id, start_date, end_date, status, processed, total, created_at)
+                            values (?, ?, ?, ?, ?, 'pending', 0, ?, ?)
+                            """,
+                    Statement.RETURN_GENERATED_KEYS
+            );
+            ps.setString(1, type);
+            ps.setString(2, batchId);
+            ps.setObject(3, productId);
+            ps.setObject(4, toSqlDate(start));
+            ps.setObject(5, toSqlDate(end));
+            ps.setInt(6, Math.max(0, total));
+            ps.setTimestamp(7, now);
+            return ps;
+        }, keyHolder);
+
+        Number key = keyHolder.getKey();
+        if (key == null) {
+            throw new IllegalStateException("failed to create analysis job");
+        }
+        long jobId = key.longValue();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dispatch(jobId);
+                }
+            });
+        } else {
+            dispatch(jobId);
+        }
+        return jobId;
+    }
+
+    private void dispatch(long jobId) {
+        try {
+            workers.execute(() -> execute(jobId));
+        } catch (RejectedExecutionException e) {
+            log.warn("analysis job {} rejected, it stays pending until restart", jobId);
+        }
+    }
+
+    private void execute(long jobId) {
+        int claimed = jdbcTemplate.update(
+                "update analysis_job set status = 'running', processed = 0, started_at = ? where id = ? and status = 'pending'",
+                Timestamp.valueOf(LocalDateTime.now()),
+                jobId
+        );
+        if (claimed == 0) {
+            return;
+        }
+
+        try {
+            JobRow job = loadJob(jobId);
+            Set<Long> productIds;
+            if (TYPE_IMPORT.equals(job.type())) {
+                productIds = analyzeInChunks(jobId, "r.batch_id = ?", List.of(job.batchId()));
+            } else {
+                List<Object> params = new ArrayList<>();
+                String where = productWhereClause(job.productId(), job.startDate(), job.endDate(), params);
+                analyzeInChunks(jobId, where, params);
+                productIds = Set.of(job.productId());
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                for (Long productId : productIds) {
+                    if (TYPE_IMPORT.equals(job.type())) {
+                        recomputeScheduler.markDirty(productId, null, null);
+                    } else {
+                        recomputeScheduler.markDirty(productId, job.startDate(), job.endDate());
+                    }
+                }
+                jdbcTemplate.update(
+                        "update analysis_job set status = 'done', finished_at = ? where id = ?",
+                        Timestamp.valueOf(LocalDateTime.now()),
+                        jobId
+                );
+            });
+        } catch (Exception e) {
+            log.error("analysis job {} failed", jobId, e);
+            String message = e.getMessage() == null ? e.getClass().getName() : e.getMessage();
+            jdbcTemplate.update(
+                    "update analysis_job set status = 'failed', error = ?, finished_at = ? where id = ?",
+                    message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message,
+                    Timestamp.valueOf(LocalDateTime.now()),
+                    jobId
+            );
+        }
+    }
+
+    private Set<Long> analyzeInChunks(long jobId, String where, List<Object> whereParams) {
+        Set<Long> productIds = new LinkedHashSet<>();
+        String sql = "select r.id from review r where " + where + " and r.id > ? order by r.id asc limit ?";
+        long lastId = 0L;
+        int processed = 0;
+        while (true) {
+            List<Object> params = new ArrayList<>(whereParams);
+            params.add(lastId);
+            params.add(chunkSize);
+            List<Long> ids = jdbcTemplate.queryForList(sql, Long.class, params.toArray());
+            if (ids.isEmpty()) {
+                break;
+            }
+
+            productIds.addAll(reviewAnalysisService.analyzeReviewIds(ids));
+            processed += ids.size();
+            lastId = ids.get(ids.size() - 1);
+            jdbcTemplate.update("update analysis_job set processed = ? where id = ?", processed, jobId);
+
+            if (ids.size() < chunkSize) {
+                break;
+            }
+        }
+        return productIds;
+    }
+
+    private int countProductReviews(Long productId, LocalDate start, LocalDate end) {
+        List<Object> params = new ArrayList<>();
+        String where = productWhereClause(productId, start, end, params);
+        Long count = jdbcTemplate.queryForObject("select count(*) from review r where " + where, Long.class, params.toArray());
+        return count == null ? 0 : (int) Math.min(Integer.MAX_VALUE, count);
+    }
+
+    private static String productWhereClause(Long productId, LocalDate start, LocalDate end, List<Object> params) {
+        StringBuilder sb = new StringBuilder("r.product_id = ?");
+        params.add(productId);
+        if (start != null) {
+            sb.append(" and r.effective_time >= ?");
+            params.add(Timestamp.valueOf(start.atStartOfDay()));
+        }
+        if (end != null) {
+            sb.append(" and r.effective_time < ?");
+            params.add(Timestamp.valueOf(end.plusDays(1).atStartOfDay()));
+        }
+        return sb.toString();
+    }
+
+    private JobRow loadJob(long jobId) {
+        return jdbcTemplate.queryForObject("""
+                        select j.job_type as jobType,
+                               j.batch_id as batchId,
+                               j.product_id as productId,
+                               j.start_date as startDate,
+                               j.end_date as endDate
+                        from analysis_job j
+                        where j.id = ?
+                        """,
+                (rs, rowNum) -> {
+                    Date startDate = rs.getDate("startDate");
+                    Date endDate = rs.getDate("endDate");
+                    return new JobRow(
+                            rs.getString("jobType"),
+                            rs.getString("batchId"),
+                            (Long) rs.getObject("productId"),
+                            startDate == null ? null : startDate.toLocalDate(),
+                            endDate == null ? null : endDate.toLocalDate()
+                    );
+                },
+                jobId
+        );
+    }
+
+    private static Date toSqlDate(LocalDate value) {
+        return value == null ? null : Date.valueOf(value);
+    }
+
+    private static String formatTimestamp(Timestamp ts) {
+        return ts == null ? null : DATETIME_FORMAT.format(ts.toLocalDateTime());
+    }
+
+    private record JobRow(String type, String batchId, Long productId, LocalDate startDate, LocalDate endDate) {}
+}
@@ -4,9 +4,8 @@ import com.wh.reputation.common.BadRequestException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import java.sql.Timestamp;
+import java.sql.Date;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
@@ -25,31 +24,28 @@ public class AnalysisQueryService {
         if (productId == null) {
             throw new BadRequestException("productId is required");
         }
-        LocalDateTime startTime = start == null ? null : start.atStartOfDay();
-        LocalDateTime endExclusive = end == null ? null : end.plusDays(1).atStartOfDay();
 
         StringBuilder sql = new StringBuilder("""
                 select a.id as aspectId,
                        a.name as aspectName,
-                       sum(case when r.id is not null then 1 else 0 end) as volume,
-                       sum(case when r.id is not null and rar.sentiment_label = 'POS' then 1 else 0 end) as posCnt,
-                       sum(case when r.id is not null and rar.sentiment_label = 'NEU' then 1 else 0 end) as neuCnt,
-                       sum(case when r.id is not null and rar.sentiment_label = 'NEG' then 1 else 0 end) as negCnt
+                       coalesce(sum(d.total), 0) as volume,
+                       coalesce(sum(d.pos_cnt), 0) as posCnt,
+                       coalesce(sum(d.neu_cnt), 0) as neuCnt,
+                       coalesce(sum(d.neg_cnt), 0) as negCnt
                 from aspect a
-                left join review_aspect_result rar on rar.aspect_id = a.id
-                left join review r on r.id = rar.review_id
-                 and r.product_id = ?
+                left join daily_sentiment_rollup d on d.aspect_id = a.id
+                 and d.product_id = ?
                 """);
 
         List<Object> params = new ArrayList<>();
         params.add(productId);
-        if (startTime != null) {
-            sql.append(" and coalesce(r.review_time, r.created_at) >= ?");
-            params.add(Timestamp.valueOf(startTime));
+        if (start != null) {
+            sql.append(" and d.stat_date >= ?");
+            params.add(Date.valueOf(start));
         }
-        if (endExclusive != null) {
-            sql.append(" and coalesce(r.review_time, r.created_at) < ?");
-            params.add(Timestamp.valueOf(endExclusive));
+        if (end != null) {
+            sql.append(" and d.stat_date <= ?");
+            params.add(Date.valueOf(end));
         }
 
         sql.append("""
@@ -79,50 +75,33 @@ public class AnalysisQueryService {
         if (productId == null) {
             throw new BadRequestException("productId is required");
         }
-        LocalDateTime startTime = start == null ? null : start.atStartOfDay();
-        LocalDateTime endExclusive = end == null ? null : end.plusDays(1).atStartOfDay();
 
-        StringBuilder sql;
+        StringBuilder sql = new StringBuilder("""
+                select d.stat_date as d,
+                       sum(d.total) as cnt,
+                       sum(d.pos_cnt) as posCnt,
+                       sum(d.neu_cnt) as neuCnt,
+                       sum(d.neg_cnt) as negCnt
+                from daily_sentiment_rollup d
+                where d.product_id = ?
+                  and d.aspect_id = ?
+                """);
         List<Object> params = new ArrayList<>();
-        if (aspectId == null) {
-            sql = new StringBuilder("""
-                    select date(coalesce(r.review_time, r.created_at)) as d,
-                           count(*) as cnt,
-                           sum(case when r.overall_sentiment_label = 'POS' then 1 else 0 end) as posCnt,
-                           sum(case when r.overall_sentiment_label = 'NEU' then 1 else 0 end) as neuCnt,
-                           sum(case when r.overall_sentiment_label = 'NEG' then 1 else 0 end) as negCnt
-                    from review r
-                    where r.product_id = ?
-                    """);
-            params.add(productId);
-        } else {
-            sql = new StringBuilder("""
-                    select date(coalesce(r.review_time, r.created_at)) as d,
-                           count(*) as cnt,
-                           sum(case when rar.sentiment_label = 'POS' then 1 else 0 end) as posCnt,
-                           sum(case when rar.sentiment_label = 'NEU' then 1 else 0 end) as neuCnt,
-                           sum(case when rar.sentiment_label = 'NEG' then 1 else 0 end) as negCnt
-                    from review_aspect_result rar
-                    join review r on r.id = rar.review_id
-                    where r.product_id = ?
-                      and rar.aspect_id = ?
-                    """);
-            params.add(productId);
-            params.add(aspectId);
-        }
+        params.add(productId);
+        params.add(aspectId == null ? 0L : aspectId);
 
-        if (startTime != null) {
-            sql.append(" and coalesce(r.review_time, r.created_at) >= ?");
-            params.add(Timestamp.valueOf(startTime));
+        if (start != null) {
+            sql.append(" and d.stat_date >= ?");
+            params.add(Date.valueOf(start));
         }
-        if (endExclusive != null) {
-            sql.append(" and coalesce(r.review_time, r.created_at) < ?");
-            params.add(Timestamp.valueOf(endExclusive));
+        if (end != null) {
+            sql.append(" and d.stat_date <= ?");
+            params.add(Date.valueOf(end));
         }
 
         sql.append("""
-                group by d
-                order by d asc
+                group by d.stat_date
+                order by d.stat_date asc
                 """);
 
         List<TrendPointDto> series = jdbcTemplate.query(sql.toString(), (rs, rowNum) -> {
@@ -1,4 +1,3 @@
 package com.wh.reputation.analysis;
 
-public record AnalysisRunResponseDto(boolean started) {}
-
+public record AnalysisRunResponseDto(boolean started, Long jobId) {}
@@ -0,0 +1,130 @@
+package com.wh.reputation.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+final class AspectMatcher {
+    private final List<Long> aspectIds;
+    private final TermAutomaton automaton;
+    private final int[][] bindings;
+    private final double[][] weights;
+    private final String[] keywords;
+
+    private AspectMatcher(List<Long> aspectIds, TermAutomaton automaton, int[][] bindings, double[][] weights, String[] keywords) {
+        this.aspectIds = aspectIds;
+        this.automaton = automaton;
+        this.bindings = bindings;
+        this.weights = weights;
+        this.keywords = keywords;
+    }
+
+    static AspectMatcher compile(List<AspectKeywords> aspects) {
+        Map<String, Integer> patternIds = new LinkedHashMap<>();
+        List<List<int[]>> patternBindings = new ArrayList<>();
+        List<List<Double>> patternWeights = new ArrayList<>();
+        List<Long> aspectIds = new ArrayList<>(aspects.size());
+
+        for (int a = 0; a < aspects.size(); a++) {
+            AspectKeywords aspect = aspects.get(a);
+            aspectIds.add(aspect.aspectId());
+            Map<String, Boolean> seen = new HashMap<>();
+            int position = 0;
+            for (KeywordWeight def : aspect.keywords()) {
+                if (def.keyword() == null || def.keyword().isEmpty() || seen.putIfAbsent(def.keyword(), Boolean.TRUE) != null) {
+                    continue;
+                }
+                Integer pattern = patternIds.get(def.keyword());
+                if (pattern == null) {
+                    pattern = patternIds.size();
+                    patternIds.put(def.keyword(), pattern);
+                    patternBindings.add(new ArrayList<>());
+                    patternWeights.add(new ArrayList<>());
+                }
+                patternBindings.get(pattern).add(new int[]{a, position++});
+                patternWeights.get(pattern).add(def.weight());
+            }
+        }
+
+        int patternCount = patternIds.size();
+        int[][] bindings = new int[patternCount][];
+        double[][] weights = new double[patternCount][];
+        for (int p = 0; p < patternCount; p++) {
+            List<int[]> pairs = patternBindings.get(p);
+            int[] flat = new int[pairs.size() * 2];
+            double[] w = new double[pairs.size()];
+            for (int i = 0; i < pairs.size(); i++) {
+                flat[i * 2] = pairs.get(i)[0];
+                flat[i * 2 + 1] = pairs.get(i)[1];
+                w[i] = patternWeights.get(p).get(i);
+            }
+            bindings[p] = flat;
+            weights[p] = w;
+        }
+
+        List<String> patterns = new ArrayList<>(patternIds.keySet());
+        return new AspectMatcher(
+                List.copyOf(aspectIds),
+                TermAutomaton.build(patterns),
+                bindings,
+                weights,
+                patterns.toArray(new String[0])
+        );
+    }
+
+    List<AspectMatch> match(String content) {
+        if (content == null || content.isBlank() || bindings.length == 0) {
+            return List.of();
+        }
+
+        boolean[] hit = new boolean[bindings.length];
+        int[] hitCount = {0};
+        automaton.scan(content, (pattern, start, end) -> {
+            if (!hit[pattern]) {
+                hit[pattern] = true;
+                hitCount[0]++;
+            }
+        });
+        if (hitCount[0] == 0) {
+            return List.of();
+        }
+
+        Map<Integer, List<long[]>> perAspect = new HashMap<>();
+        for (int p = 0; p < hit.length; p++) {
+            if (!hit[p]) {
+                continue;
+            }
+            int[] pairs = bindings[p];
+            for (int i = 0; i < pairs.length; i += 2) {
+                perAspect.computeIfAbsent(pairs[i], k -> new ArrayList<>())
+                        .add(new long[]{pairs[i + 1], p, i / 2});
+            }
+        }
+
+        int[] aspectOrder = perAspect.keySet().stream().mapToInt(Integer::intValue).toArray();
+        Arrays.sort(aspectOrder);
+        List<AspectMatch> matches = new ArrayList<>(aspectOrder.length);
+        for (int a : aspectOrder) {
+            List<long[]> entries = perAspect.get(a);
+            entries.sort((x, y) -> Long.compare(x[0], y[0]));
+            List<String> hitKeywords = new ArrayList<>(entries.size());
+            double sumWeight = 0.0;
+            for (long[] entry : entries) {
+                int pattern = (int) entry[1];
+                hitKeywords.add(keywords[pattern]);
+                sumWeight += weights[pattern][(int) entry[2]];
+            }
+            matches.add(new AspectMatch(aspectIds.get(a), hitKeywords, Math.min(1.0, sumWeight / 5.0)));
+        }
+        return matches;
+    }
+
+    record KeywordWeight(String keyword, double weight) {}
+
+    record AspectKeywords(Long aspectId, List<KeywordWeight> keywords) {}
+
+    record AspectMatch(Long aspectId, List<String> hitKeywords, double confidence) {}
+}
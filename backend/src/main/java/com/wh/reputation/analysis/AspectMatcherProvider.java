@@ -0,0 +1,120 @@
+package com.wh.reputation.analysis;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Component
+public class AspectMatcherProvider {
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private volatile Compiled compiled;
+
+    public AspectMatcherProvider(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    AspectMatcher current() {
+        String signature = loadSignature();
+        Compiled snapshot = compiled;
+        if (snapshot != null && snapshot.signature().equals(signature)) {
+            return snapshot.matcher();
+        }
+
+        synchronized (this) {
+            snapshot = compiled;
+            if (snapshot != null && snapshot.signature().equals(signature)) {
+                return snapshot.matcher();
+            }
+            AspectMatcher matcher = AspectMatcher.compile(loadAspects());
+            compiled = new Compiled(signature, matcher);
+            return matcher;
+        }
+    }
+
+    public void invalidate() {
+        compiled = null;
+    }
+
+    private String loadSignature() {
+        return jdbcTemplate.queryForObject("""
+                        select concat(count(*), ':', coalesce(max(a.id), 0), ':',
+                                      coalesce(sum(crc32(concat_ws(':', a.id, a.name, a.keywords_json))), 0))
+                        from aspect a
+                        """,
+                String.class
+        );
+    }
+
+    private List<AspectMatcher.AspectKeywords> loadAspects() {
+        return jdbcTemplate.query("""
+                        select a.id as id,
+                               a.keywords_json as keywordsJson
+                        from aspect a
+                        order by a.id asc
+                        """,
+                (rs, rowNum) -> new AspectMatcher.AspectKeywords(
+                        rs.getLong("id"),
+                        parseKeywordDefs(rs.getString("keywordsJson"))
+                )
+        );
+    }
+
+    private List<AspectMatcher.KeywordWeight> parseKeywordDefs(String keywordsJson) {
+        if (keywordsJson == null || keywordsJson.isBlank()) {
+            return List.of();
+        }
+
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(keywordsJson);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("invalid aspect.keywords_json: " + keywordsJson, e);
+        }
+        if (node == null || !node.isArray()) {
+            return List.of();
+        }
+
+        List<AspectMatcher.KeywordWeight> defs = new ArrayList<>();
+        for (JsonNode item : node) {
+            AspectMatcher.KeywordWeight def = parseKeywordDef(item);
+            if (def != null) {
+                defs.add(def);
+            }
+        }
+        return defs;
+    }
+
+    private static AspectMatcher.KeywordWeight parseKeywordDef(JsonNode item) {
+        if (item == null || item.isNull()) {
+            return null;
+        }
+        if (item.isTextual()) {
+            String keyword = item.asText();
+            if (keyword == null || keyword.isBlank()) {
+                return null;
+            }
+            return new AspectMatcher.KeywordWeight(keyword, 1.0);
+        }
+        if (!item.isObject()) {
+            return null;
+        }
+        String keyword = item.path("keyword").asText(null);
+        if (keyword == null || keyword.isBlank()) {
+            return null;
+        }
+        double weight = item.hasNonNull("weight") ? item.get("weight").asDouble(1.0) : 1.0;
+        if (weight <= 0) {
+            weight = 1.0;
+        }
+        return new AspectMatcher.KeywordWeight(keyword, weight);
+    }
+
+    private record Compiled(String signature, AspectMatcher matcher) {}
+}
@@ -4,39 +4,92 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.wh.reputation.common.BadRequestException;
 import com.wh.reputation.common.NotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.GeneratedKeyHolder;
-import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.sql.Date;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.stream.IntStream;
 
 @Service
 public class ClusterAnalysisService {
+    private static final Logger log = LoggerFactory.getLogger(ClusterAnalysisService.class);
     private static final int MIN_CLUSTER_SIZE = 5;
-    private static final int MAX_K = 8;
-    private static final int MAX_FEATURES = 200;
+    private static final int MAX_FEATURES = 4000;
     private static final int TOP_TERMS = 10;
     private static final int REPRESENTATIVE_REVIEWS = 5;
     private static final int MAX_ITER = 20;
+    private static final int LOAD_CHUNK = 1000;
+    private static final int MIN_PARALLEL_SLICE = 2048;
+    private static final int MAX_K_SELECTION_SAMPLE = MIN_PARALLEL_SLICE;
+    private static final int K_SELECTION_RESTARTS = 3;
+    private static final double K_SELECTION_TOLERANCE = 0.1;
     private static final DateTimeFormatter DATETIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
     private final JdbcTemplate jdbcTemplate;
-    private final TokenizationService tokenizationService;
+    private final StoredTokens storedTokens;
+    private final TermDictionary termDictionary;
+    private final ClusterTermCache clusterTermCache;
+    private final LatestResultStore latestResultStore;
+    private final AnalysisComputePool computePool;
     private final ObjectMapper objectMapper;
-
-    public ClusterAnalysisService(JdbcTemplate jdbcTemplate, TokenizationService tokenizationService, ObjectMapper objectMapper) {
+    private final TransactionTemplate pageTransaction;
+    private final long streamingThreshold;
+    private final int batchSize;
+    private final int maxBatches;
+    private final int maxK;
+    private final int kSelectionSample;
+    private final long kSelectionBudgetMs;
+
+    public ClusterAnalysisService(
+            JdbcTemplate jdbcTemplate,
+            StoredTokens storedTokens,
+            TermDictionary termDictionary,
+            ClusterTermCache clusterTermCache,
+            LatestResultStore latestResultStore,
+            AnalysisComputePool computePool,
+            ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager,
+            @Value("${reputation.cluster.streaming-threshold:200000}") long streamingThreshold,
+            @Value("${reputation.cluster.batch-size:2000}") int batchSize,
+            @Value("${reputation.cluster.max-batches:100}") int maxBatches,
+            @Value("${reputation.cluster.max-k:8}") int maxK,
+            @Value("${reputation.cluster.k-selection-sample:2000}") int kSelectionSample,
+            @Value("${reputation.cluster.k-selection-budget-ms:2000}") long kSelectionBudgetMs
+    ) {
         this.jdbcTemplate = jdbcTemplate;
-        this.tokenizationService = tokenizationService;
+        this.storedTokens = storedTokens;
+        this.termDictionary = termDictionary;
+        this.clusterTermCache = clusterTermCache;
+        this.latestResultStore = latestResultStore;
+        this.computePool = computePool;
         this.objectMapper = objectMapper;
+        this.pageTransaction = new TransactionTemplate(transactionManager);
+        this.pageTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.streamingThreshold = streamingThreshold;
+        this.batchSize = Math.max(100, batchSize);
+        this.maxBatches = Math.max(1, maxBatches);
+        this.maxK = Math.max(1, maxK);
+        if (kSelectionSample > MAX_K_SELECTION_SAMPLE) {
+            log.warn("reputation.cluster.k-selection-sample={} exceeds {}, using {}", kSelectionSample, MAX_K_SELECTION_SAMPLE, MAX_K_SELECTION_SAMPLE);
+        }
+        this.kSelectionSample = Math.min(MAX_K_SELECTION_SAMPLE, Math.max(0, kSelectionSample));
+        this.kSelectionBudgetMs = kSelectionBudgetMs;
     }
 
     @Transactional
@@ -59,19 +112,27 @@ public class ClusterAnalysisService {
             throw new BadRequestException("productId is required");
         }
 
+        if (streamingThreshold > 0 && countReviews(productId, start, end) > streamingThreshold) {
+            return recomputeStreaming(productId, start, end);
+        }
+
         List<ReviewRow> rows = loadReviewRows(productId, start, end);
         if (rows.isEmpty()) {
             return new ClustersResponseDto(List.of());
         }
 
-        List<Doc> docs = new ArrayList<>(rows.size());
-        for (ReviewRow row : rows) {
-            List<String> tokens = parseTokensOrTokenize(row.tokensJson(), row.contentClean());
-            docs.add(new Doc(row.id(), tokens, isNeg(row.sentimentLabel())));
+        ClusterTermCache.ProductTerms corpus = rows.size() > clusterTermCache.maxDocs()
+                ? new ClusterTermCache.ProductTerms()
+                : clusterTermCache.product(productId);
+        List<Doc> docs;
+        TermSpace space;
+        synchronized (corpus) {
+            docs = loadDocs(corpus, rows);
+            space = new TermSpace(corpus.terms(), docs.size() == corpus.size() ? corpus.df() : null);
         }
 
         int k = chooseK(docs.size());
-        List<ClusterResult> results = cluster(docs, k);
+        List<ClusterResult> results = cluster(docs, space, k);
         if (results.isEmpty()) {
             return new ClustersResponseDto(List.of());
         }
@@ -80,43 +141,27 @@ public class ClusterAnalysisService {
         Timestamp createdAtTs = Timestamp.valueOf(createdAt);
         int finalK = results.size();
 
-        List<ClusterListItemDto> responseItems = new ArrayList<>(results.size());
+        List<NewCluster> newClusters = new ArrayList<>(results.size());
+        int memberCount = 0;
         for (ClusterResult result : results) {
-            String topTermsJson = toJson(result.topTerms());
-            KeyHolder keyHolder = new GeneratedKeyHolder();
-            jdbcTemplate.update(con -> {
-                PreparedStatement ps = con.prepareStatement("""
-                                insert into `cluster` (product_id, start_date, end_date, k, top_terms_json, size, neg_rate, created_at)
-                                values (?, ?, ?, ?, ?, ?, ?, ?)
-                                """, Statement.RETURN_GENERATED_KEYS);
-                ps.setLong(1, productId);
-                ps.setObject(2, toSqlDate(start));
-                ps.setObject(3, toSqlDate(end));
-                ps.setInt(4, finalK);
-                ps.setString(5, topTermsJson);
-                ps.setInt(6, result.reviewIds().size());
-                ps.setDouble(7, result.negRate());
-                ps.setTimestamp(8, createdAtTs);
-                return ps;
-            }, keyHolder);
-
-            Number key = keyHolder.getKey();
-            if (key == null) {
-                throw new IllegalStateException("failed to insert cluster");
-            }
-            long clusterId = key.longValue();
-
-            List<Object[]> mappingArgs = new ArrayList<>(result.reviewIds().size());
-            for (Long reviewId : result.reviewIds()) {
-                mappingArgs.add(new Object[]{reviewId, clusterId, createdAtTs});
-            }
-            jdbcTemplate.batchUpdate("""
-                            insert into review_cluster (review_id, cluster_id, created_at)
-                            values (?, ?, ?)
-                            """,
-                    mappingArgs
-            );
+            newClusters.add(new NewCluster(toJson(result.topTerms()), result.reviewIds().size(), result.negRate()));
+            memberCount += result.reviewIds().size();
+        }
+        List<Long> clusterIds = insertClusters(productId, start, end, finalK, newClusters, createdAtTs);
 
+        List<Object[]> mappingArgs = new ArrayList<>(memberCount);
+        for (int c = 0; c < results.size(); c++) {
+            for (Long reviewId : results.get(c).reviewIds()) {
+                mappingArgs.add(new Object[]{reviewId, clusterIds.get(c), createdAtTs});
+            }
+        }
+        insertMemberships(mappingArgs);
+        latestResultStore.update(LatestResultStore.CLUSTER, productId, start, end, null, createdAtTs);
+
+        List<ClusterListItemDto> responseItems = new ArrayList<>(results.size());
+        for (int c = 0; c < results.size(); c++) {
+            ClusterResult result = results.get(c);
+            long clusterId = clusterIds.get(c);
             List<Long> repIds = result.reviewIds().subList(0, Math.min(REPRESENTATIVE_REVIEWS, result.reviewIds().size()));
             responseItems.add(new ClusterListItemDto(clusterId, result.topTerms(), result.reviewIds().size(), result.negRate(), repIds));
         }
@@ -124,6 +169,273 @@ public class ClusterAnalysisService {
         return new ClustersResponseDto(responseItems);
     }
 
+    private ClustersResponseDto recomputeStreaming(Long productId, LocalDate start, LocalDate end) {
+        int[] df = new int[1024];
+        int[] seenIn = new int[1024];
+        List<Long> pageStarts = new ArrayList<>();
+        int docCount = 0;
+        long afterId = 0L;
+        while (true) {
+            List<StreamDoc> page = loadPage(productId, start, end, afterId);
+            if (page.isEmpty()) {
+                break;
+            }
+            pageStarts.add(afterId);
+            for (StreamDoc doc : page) {
+                docCount++;
+                for (int termId : doc.termIds()) {
+                    if (termId >= df.length) {
+                        df = Arrays.copyOf(df, Math.max(termId + 1, df.length * 2));
+                        seenIn = Arrays.copyOf(seenIn, df.length);
+                    }
+                    if (seenIn[termId] != docCount) {
+                        seenIn[termId] = docCount;
+                        df[termId]++;
+                    }
+                }
+            }
+            afterId = page.get(page.size() - 1).id();
+        }
+        if (docCount == 0) {
+            return new ClustersResponseDto(List.of());
+        }
+
+        int[] docFreq = df;
+        int[] dfGlobalIds = IntStream.range(0, docFreq.length).filter(t -> docFreq[t] > 0).toArray();
+        String[] dfTerms = new String[dfGlobalIds.length];
+        int[] dfCounts = new int[dfGlobalIds.length];
+        for (int t = 0; t < dfGlobalIds.length; t++) {
+            String term = termDictionary.term(dfGlobalIds[t]);
+            dfTerms[t] = term == null ? "" : term;
+            dfCounts[t] = term == null ? 0 : docFreq[dfGlobalIds[t]];
+        }
+        int[] vocabIds = buildVocabulary(dfTerms, dfCounts, 2);
+        if (vocabIds.length == 0) {
+            vocabIds = buildVocabulary(dfTerms, dfCounts, 1);
+        }
+        int[] vocab = new int[docFreq.length];
+        Arrays.fill(vocab, -1);
+        double[] idf = new double[vocabIds.length];
+        for (int i = 0; i < vocabIds.length; i++) {
+            vocab[dfGlobalIds[vocabIds[i]]] = i;
+            idf[i] = Math.log((docCount + 1.0) / (dfCounts[vocabIds[i]] + 1.0)) + 1.0;
+        }
+
+        double[][] centroids = trainMiniBatch(productId, start, end, pageStarts, vocab, idf, chooseK(docCount));
+        return assignStreaming(productId, start, end, pageStarts, vocab, idf, centroids);
+    }
+
+    private double[][] trainMiniBatch(
+            Long productId,
+            LocalDate start,
+            LocalDate end,
+            List<Long> pageStarts,
+            int[] vocab,
+            double[] idf,
+            int k
+    ) {
+        int dim = idf.length;
+        int stride = Math.max(1, (pageStarts.size() + maxBatches - 1) / maxBatches);
+        double[][] centroids = null;
+        long[] counts = null;
+        for (int p = 0; p < pageStarts.size() && k > 1; p += stride) {
+            List<SparseVector> batch = loadPage(productId, start, end, pageStarts.get(p)).stream()
+                    .map(doc -> vectorizeTokens(doc.termIds(), vocab, idf))
+                    .toList();
+            if (centroids == null) {
+                long nonZero = batch.stream().filter(v -> v.normSq() > 0).count();
+                if (nonZero == 0) {
+                    continue;
+                }
+                int batchK = selectK(batch, dim, (int) Math.min(k, nonZero));
+                centroids = initCentroids(batch, dim, batchK);
+                counts = new long[centroids.length];
+                Arrays.fill(counts, 1L);
+            }
+            miniBatchUpdate(batch, centroids, counts);
+        }
+        return centroids == null ? new double[1][dim] : centroids;
+    }
+
+    private void miniBatchUpdate(List<SparseVector> batch, double[][] centroids, long[] counts) {
+        double[] centroidNormSq = normsSq(centroids);
+        List<Integer> assign = computePool.map(batch, v -> nearest(centroids, centroidNormSq, v));
+
+        double[] scale = new double[centroids.length];
+        Arrays.fill(scale, 1.0);
+        for (int i = 0; i < batch.size(); i++) {
+            int c = assign.get(i);
+            counts[c]++;
+            double eta = 1.0 / counts[c];
+            scale[c] *= 1.0 - eta;
+            batch.get(i).addScaledTo(centroids[c], eta / scale[c]);
+        }
+        for (int c = 0; c < centroids.length; c++) {
+            if (scale[c] != 1.0) {
+                for (int d = 0; d < centroids[c].length; d++) {
+                    centroids[c][d] *= scale[c];
+                }
+                normalize(centroids[c]);
+            }
+        }
+    }
+
+    private ClustersResponseDto assignStreaming(
+            Long productId,
+            LocalDate start,
+            LocalDate end,
+            List<Long> pageStarts,
+            int[] vocab,
+            double[] idf,
+            double[][] centroids
+    ) {
+        int k = centroids.length;
+        Timestamp createdAtTs = Timestamp.valueOf(LocalDateTime.now());
+        List<Long> clusterIds = pageTransaction.execute(status -> insertClusters(
+                productId, start, end, k, Collections.nCopies(k, new NewCluster("[]", 0, 0.0)), createdAtTs
+        ));
+        try {
+            return assignPages(productId, start, end, pageStarts, vocab, idf, centroids, clusterIds, createdAtTs);
+        } catch (RuntimeException e) {
+            try {
+                discardRun(clusterIds);
+            } catch (RuntimeException cleanup) {
+                e.addSuppressed(cleanup);
+            }
+            throw e;
+        }
+    }
+
+    private ClustersResponseDto assignPages(
+            Long productId,
+            LocalDate start,
+            LocalDate end,
+            List<Long> pageStarts,
+            int[] vocab,
+            double[] idf,
+            double[][] centroids,
+            List<Long> clusterIds,
+            Timestamp createdAtTs
+    ) {
+        int k = centroids.length;
+        double[] centroidNormSq = normsSq(centroids);
+
+        int[] sizes = new int[k];
+        int[] negCounts = new int[k];
+        List<Map<Integer, Integer>> termFreq = new ArrayList<>(k);
+        List<List<Long>> repIds = new ArrayList<>(k);
+        for (int c = 0; c < k; c++) {
+            termFreq.add(new HashMap<>());
+            repIds.add(new ArrayList<>(REPRESENTATIVE_REVIEWS));
+        }
+
+        for (int p = 0; p < pageStarts.size(); p++) {
+            long upper = p + 1 < pageStarts.size() ? pageStarts.get(p + 1) : Long.MAX_VALUE;
+            List<StreamDoc> page = loadPage(productId, start, end, pageStarts.get(p)).stream()
+                    .filter(doc -> doc.id() <= upper)
+                    .toList();
+            List<Integer> assign = computePool.map(page, doc -> nearest(centroids, centroidNormSq, vectorizeTokens(doc.termIds(), vocab, idf)));
+            List<Object[]> mappingArgs = new ArrayList<>(page.size());
+            for (int i = 0; i < page.size(); i++) {
+                StreamDoc doc = page.get(i);
+                int c = assign.get(i);
+                sizes[c]++;
+                if (doc.neg()) {
+                    negCounts[c]++;
+                }
+                for (int termId : doc.termIds()) {
+                    termFreq.get(c).merge(termId, 1, Integer::sum);
+                }
+                if (repIds.get(c).size() < REPRESENTATIVE_REVIEWS) {
+                    repIds.get(c).add(doc.id());
+                }
+                mappingArgs.add(new Object[]{doc.id(), clusterIds.get(c), createdAtTs});
+            }
+            pageTransaction.executeWithoutResult(status -> insertMemberships(mappingArgs));
+        }
+
+        int finalK = (int) Arrays.stream(sizes).filter(size -> size > 0).count();
+        List<ClusterListItemDto> items = new ArrayList<>(finalK);
+        pageTransaction.executeWithoutResult(status -> {
+            for (int c = 0; c < k; c++) {
+                if (sizes[c] == 0) {
+                    jdbcTemplate.update("delete from `cluster` where id = ?", clusterIds.get(c));
+                    continue;
+                }
+                List<String> topTerms = topTerms(termFreq.get(c));
+                double negRate = (double) negCounts[c] / sizes[c];
+                jdbcTemplate.update(
+                        "update `cluster` set k = ?, top_terms_json = ?, size = ?, neg_rate = ? where id = ?",
+                        finalK, toJson(topTerms), sizes[c], negRate, clusterIds.get(c)
+                );
+                items.add(new ClusterListItemDto(clusterIds.get(c), topTerms, sizes[c], negRate, repIds.get(c)));
+            }
+            latestResultStore.update(LatestResultStore.CLUSTER, productId, start, end, null, createdAtTs);
+        });
+        items.sort(Comparator.comparingInt(ClusterListItemDto::size).reversed());
+        return new ClustersResponseDto(items);
+    }
+
+    private void discardRun(List<Long> clusterIds) {
+        String placeholders = String.join(",", Collections.nCopies(clusterIds.size(), "?"));
+        pageTransaction.executeWithoutResult(status -> {
+            jdbcTemplate.update("delete from review_cluster where cluster_id in (" + placeholders + ")", clusterIds.toArray());
+            jdbcTemplate.update("delete from `cluster` where id in (" + placeholders + ")", clusterIds.toArray());
+        });
+    }
+
+    private List<Long> insertClusters(
+            Long productId,
+            LocalDate start,
+            LocalDate end,
+            int k,
+            List<NewCluster> clusters,
+            Timestamp createdAtTs
+    ) {
+        return jdbcTemplate.execute((ConnectionCallback<List<Long>>) con -> {
+            try (PreparedStatement ps = con.prepareStatement("""
+                    insert into `cluster` (product_id, start_date, end_date, k, top_terms_json, size, neg_rate, created_at)
+                    values (?, ?, ?, ?, ?, ?, ?, ?)
+                    """, Statement.RETURN_GENERATED_KEYS)) {
+                for (NewCluster cluster : clusters) {
+                    ps.setLong(1, productId);
+                    ps.setObject(2, toSqlDate(start));
+                    ps.setObject(3, toSqlDate(end));
+                    ps.setInt(4, k);
+                    ps.setString(5, cluster.topTermsJson());
+                    ps.setInt(6, cluster.size());
+                    ps.setDouble(7, cluster.negRate());
+                    ps.setTimestamp(8, createdAtTs);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+
+                List<Long> ids = new ArrayList<>(clusters.size());
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    while (keys.next()) {
+                        ids.add(keys.getLong(1));
+                    }
+                }
+                if (ids.size() != clusters.size()) {
+                    throw new IllegalStateException("failed to insert cluster: expected " + clusters.size() + " keys, got " + ids.size());
+                }
+                return ids;
+            }
+        });
+    }
+
+    private void insertMemberships(List<Object[]> mappingArgs) {
+        if (mappingArgs.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate("""
+                        insert into review_cluster (review_id, cluster_id, created_at)
+                        values (?, ?, ?)
+                        """,
+                mappingArgs
+        );
+    }
+
     public ClusterDetailResponseDto clusterDetail(Long id) {
         if (id == null) {
             throw new BadRequestException("id is required");
@@ -155,7 +467,7 @@ public class ClusterAnalysisService {
     private List<ClusterRepresentativeReviewDto> loadRepresentativeReviews(Long clusterId) {
         String sql = """
                 select r.id as id,
-                       coalesce(r.review_time, r.created_at) as reviewTime,
+                       r.effective_time as reviewTime,
                        r.content_clean as contentClean,
                        r.overall_sentiment_label as overallSentiment
                 from review_cluster rc
@@ -178,19 +490,11 @@ public class ClusterAnalysisService {
     }
 
     private ClustersResponseDto loadLatest(Long productId, LocalDate start, LocalDate end) {
-        String maxSql = """
-                select max(c.created_at) as createdAt
-                from `cluster` c
-                where c.product_id = ?
-                  and c.start_date <=> ?
-                  and c.end_date <=> ?
-                """;
-
-        List<Map<String, Object>> maxRows = jdbcTemplate.queryForList(maxSql, productId, toSqlDate(start), toSqlDate(end));
-        if (maxRows.isEmpty() || maxRows.get(0).get("createdAt") == null) {
+        LatestResultStore.Pointer latest = latestResultStore.find(LatestResultStore.CLUSTER, productId, start, end);
+        if (latest == null) {
             return null;
         }
-        Timestamp createdAt = (Timestamp) maxRows.get(0).get("createdAt");
+        Timestamp createdAt = latest.createdAt();
 
         String listSql = """
                 select c.id as id,
@@ -202,7 +506,7 @@ public class ClusterAnalysisService {
                   and c.start_date <=> ?
                   and c.end_date <=> ?
                   and c.created_at = ?
-                order by c.id asc
+                order by c.size desc, c.id asc
                 """;
 
         List<ClusterRow> clusters = jdbcTemplate.query(listSql, (rs, rowNum) -> new ClusterRow(
@@ -268,38 +572,132 @@ public class ClusterAnalysisService {
         List<Object> params = new ArrayList<>();
         StringBuilder sql = new StringBuilder("""
                 select r.id as id,
-                       r.content_clean as contentClean,
-                       r.tokens_json as tokensJson,
-                       r.overall_sentiment_label as sentimentLabel
+                       r.overall_sentiment_label as sentimentLabel,
+                       r.analyzed_at as analyzedAt
                 from review r
                 where r.product_id = ?
                 """);
         params.add(productId);
 
         if (startTime != null) {
-            sql.append(" and coalesce(r.review_time, r.created_at) >= ?");
+            sql.append(" and r.effective_time >= ?");
             params.add(Timestamp.valueOf(startTime));
         }
         if (endExclusive != null) {
-            sql.append(" and coalesce(r.review_time, r.created_at) < ?");
+            sql.append(" and r.effective_time < ?");
             params.add(Timestamp.valueOf(endExclusive));
         }
         sql.append(" order by r.id asc");
 
         return jdbcTemplate.query(sql.toString(), (rs, rowNum) -> new ReviewRow(
                 rs.getLong("id"),
-                rs.getString("contentClean"),
-                rs.getString("tokensJson"),
-                rs.getString("sentimentLabel")
+                rs.getString("sentimentLabel"),
+                millis(rs.getTimestamp("analyzedAt"))
         ), params.toArray());
     }
 
-    private List<String> parseTokensOrTokenize(String tokensJson, String contentClean) {
-        List<String> tokens = parseJsonArray(tokensJson);
-        if (!tokens.isEmpty()) {
-            return tokens;
+    private long countReviews(Long productId, LocalDate start, LocalDate end) {
+        List<Object> params = new ArrayList<>();
+        String sql = "select count(*) from review r where r.product_id = ?" + windowFilter(start, end, params);
+        params.add(0, productId);
+        Long count = jdbcTemplate.queryForObject(sql, Long.class, params.toArray());
+        return count == null ? 0L : count;
+    }
+
+    private List<StreamDoc> loadPage(Long productId, LocalDate start, LocalDate end, long afterId) {
+        List<Object> params = new ArrayList<>();
+        params.add(productId);
+        params.add(afterId);
+        String sql = """
+                select r.id as id,
+                       r.tokens_bin as tokensBin,
+                       case when r.tokens_bin is null then r.tokens_json end as tokensJson,
+                       case when r.tokens_bin is null then r.content_clean end as contentClean,
+                       r.overall_sentiment_label as sentimentLabel
+                from review r
+                where r.product_id = ?
+                  and r.id > ?
+                """ + windowFilter(start, end, params) + " order by r.id asc limit ?";
+        params.add(batchSize);
+        List<Long> ids = new ArrayList<>();
+        List<Boolean> neg = new ArrayList<>();
+        List<StoredTokens.Row> rows = new ArrayList<>();
+        jdbcTemplate.query(sql, rs -> {
+            ids.add(rs.getLong("id"));
+            neg.add(isNeg(rs.getString("sentimentLabel")));
+            rows.add(StoredTokens.read(rs));
+        }, params.toArray());
+
+        int[][] termIds = storedTokens.termIds(rows);
+        List<StreamDoc> page = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            page.add(new StreamDoc(ids.get(i), termIds[i], neg.get(i)));
         }
-        return tokenizationService.tokenize(contentClean);
+        return page;
+    }
+
+    private static String windowFilter(LocalDate start, LocalDate end, List<Object> params) {
+        StringBuilder sql = new StringBuilder();
+        if (start != null) {
+            sql.append(" and r.effective_time >= ?");
+            params.add(Timestamp.valueOf(start.atStartOfDay()));
+        }
+        if (end != null) {
+            sql.append(" and r.effective_time < ?");
+            params.add(Timestamp.valueOf(end.plusDays(1).atStartOfDay()));
+        }
+        return sql.toString();
+    }
+
+    private List<Doc> loadDocs(ClusterTermCache.ProductTerms corpus, List<ReviewRow> rows) {
+        List<Long> missing = new ArrayList<>();
+        for (ReviewRow row : rows) {
+            ClusterTermCache.DocTerms cached = corpus.get(row.id());
+            if (cached == null || cached.analyzedAt() != row.analyzedAt()) {
+                missing.add(row.id());
+            }
+        }
+        if (corpus.size() + missing.size() > clusterTermCache.maxDocs()) {
+            corpus.clear();
+            missing = rows.stream().map(ReviewRow::id).toList();
+        }
+        for (int from = 0; from < missing.size(); from += LOAD_CHUNK) {
+            List<Long> chunk = missing.subList(from, Math.min(missing.size(), from + LOAD_CHUNK));
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            List<Long> ids = new ArrayList<>(chunk.size());
+            List<Long> analyzedAt = new ArrayList<>(chunk.size());
+            List<StoredTokens.Row> stored = new ArrayList<>(chunk.size());
+            jdbcTemplate.query("""
+                            select r.id as id,
+                                   r.analyzed_at as analyzedAt,
+                                   r.tokens_bin as tokensBin,
+                                   case when r.tokens_bin is null then r.tokens_json end as tokensJson,
+                                   case when r.tokens_bin is null then r.content_clean end as contentClean
+                            from review r
+                            where r.id in (%s)
+                            """.formatted(placeholders),
+                    rs -> {
+                        ids.add(rs.getLong("id"));
+                        analyzedAt.add(millis(rs.getTimestamp("analyzedAt")));
+                        stored.add(StoredTokens.read(rs));
+                    },
+                    chunk.toArray()
+            );
+            int[][] termIds = storedTokens.termIds(stored);
+            for (int i = 0; i < ids.size(); i++) {
+                corpus.put(ids.get(i), termIds[i], analyzedAt.get(i), termDictionary);
+            }
+        }
+
+        List<Doc> docs = new ArrayList<>(rows.size());
+        for (ReviewRow row : rows) {
+            ClusterTermCache.DocTerms terms = corpus.get(row.id());
+            if (terms == null) {
+                terms = corpus.put(row.id(), new int[0], row.analyzedAt(), termDictionary);
+            }
+            docs.add(new Doc(row.id(), terms, isNeg(row.sentimentLabel())));
+        }
+        return docs;
     }
 
     private List<String> parseJsonArray(String json) {
@@ -322,7 +720,7 @@ public class ClusterAnalysisService {
         }
     }
 
-    private static int chooseK(int docCount) {
+    private int chooseK(int docCount) {
         if (docCount <= 0) {
             return 0;
         }
@@ -330,28 +728,29 @@ public class ClusterAnalysisService {
             return 1;
         }
         int k = Math.max(1, docCount / MIN_CLUSTER_SIZE);
-        return Math.min(MAX_K, k);
+        return Math.min(maxK, k);
     }
 
-    private List<ClusterResult> cluster(List<Doc> docs, int k) {
+    private List<ClusterResult> cluster(List<Doc> docs, TermSpace space, int k) {
         if (docs == null || docs.isEmpty()) {
             return List.of();
         }
         if (k <= 1) {
-            return List.of(buildClusterResult(docs, docs));
+            return List.of(buildClusterResult(space, docs));
         }
 
-        Vectorization vectorization = vectorize(docs);
+        Vectorization vectorization = vectorize(docs, space);
         if (vectorization.vectors().isEmpty()) {
-            return List.of(buildClusterResult(docs, docs));
+            return List.of(buildClusterResult(space, docs));
         }
 
         if (vectorization.nonZeroCount() == 0) {
-            return roundRobinClusters(docs, k);
+            return roundRobinClusters(docs, space, k);
         }
 
-        int effectiveK = Math.min(k, vectorization.nonZeroCount());
-        int[] assignments = kmeans(vectorization.vectors(), effectiveK);
+        int effectiveK = selectK(vectorization.vectors(), vectorization.dim(), Math.min(k, vectorization.nonZeroCount()));
+        List<SparseVector> vectors = vectorization.vectors();
+        int[] assignments = kmeans(vectors, vectorization.dim(), initCentroids(vectors, vectorization.dim(), effectiveK));
 
         Map<Integer, List<Doc>> grouped = new HashMap<>();
         for (int i = 0; i < assignments.length; i++) {
@@ -362,16 +761,16 @@ public class ClusterAnalysisService {
                 .sorted(Comparator.comparingInt((List<Doc> list) -> list.size()).reversed())
                 .toList();
 
-        List<List<Doc>> merged = mergeSmallClusters(clusters, vectorization.vectors(), effectiveK);
+        List<List<Doc>> merged = mergeSmallClusters(clusters, vectorization, effectiveK);
         List<ClusterResult> results = new ArrayList<>(merged.size());
         for (List<Doc> clusterDocs : merged) {
-            results.add(buildClusterResult(docs, clusterDocs));
+            results.add(buildClusterResult(space, clusterDocs));
         }
         results.sort(Comparator.comparingInt((ClusterResult r) -> r.reviewIds().size()).reversed());
         return results;
     }
 
-    private List<ClusterResult> roundRobinClusters(List<Doc> docs, int k) {
+    private List<ClusterResult> roundRobinClusters(List<Doc> docs, TermSpace space, int k) {
         List<List<Doc>> buckets = new ArrayList<>(k);
         for (int i = 0; i < k; i++) {
             buckets.add(new ArrayList<>());
@@ -387,20 +786,20 @@ public class ClusterAnalysisService {
         List<ClusterResult> results = new ArrayList<>();
         for (List<Doc> bucket : buckets) {
             if (!bucket.isEmpty()) {
-                results.add(buildClusterResult(docs, bucket));
+                results.add(buildClusterResult(space, bucket));
             }
         }
         return results;
     }
 
-    private List<List<Doc>> mergeSmallClusters(List<List<Doc>> clusters, List<double[]> vectors, int k) {
-        int docCount = vectors.size();
+    private List<List<Doc>> mergeSmallClusters(List<List<Doc>> clusters, Vectorization vectorization, int k) {
+        int docCount = vectorization.vectors().size();
         int minSize = Math.min(MIN_CLUSTER_SIZE, docCount);
         if (clusters.size() <= 1) {
             return clusters;
         }
 
-        List<double[]> centroids = computeCentroids(clusters, vectors);
+        List<double[]> centroids = computeCentroids(clusters, vectorization);
         List<List<Doc>> mutable = new ArrayList<>(clusters);
         List<double[]> mutableCentroids = new ArrayList<>(centroids);
 
@@ -432,7 +831,7 @@ public class ClusterAnalysisService {
             mutable.remove(removeIdx);
             mutableCentroids.remove(removeIdx);
 
-            mutableCentroids.set(keepIdx, computeCentroid(mutable.get(keepIdx), vectors));
+            mutableCentroids.set(keepIdx, computeCentroid(mutable.get(keepIdx), vectorization));
         }
 
         return mutable;
@@ -454,72 +853,193 @@ public class ClusterAnalysisService {
         return bestIdx;
     }
 
-    private List<double[]> computeCentroids(List<List<Doc>> clusters, List<double[]> vectors) {
+    private List<double[]> computeCentroids(List<List<Doc>> clusters, Vectorization vectorization) {
         List<double[]> centroids = new ArrayList<>(clusters.size());
         for (List<Doc> cluster : clusters) {
-            centroids.add(computeCentroid(cluster, vectors));
+            centroids.add(computeCentroid(cluster, vectorization));
         }
         return centroids;
     }
 
-    private double[] computeCentroid(List<Doc> cluster, List<double[]> vectors) {
+    private double[] computeCentroid(List<Doc> cluster, Vectorization vectorization) {
         if (cluster == null || cluster.isEmpty()) {
             return new double[0];
         }
-        int dim = vectors.get(0).length;
-        double[] sum = new double[dim];
-        int count = 0;
+        double[] sum = new double[vectorization.dim()];
         for (Doc doc : cluster) {
-            int idx = (int) Math.min(Math.max(0, doc.vectorIndex()), vectors.size() - 1);
-            double[] v = vectors.get(idx);
-            for (int d = 0; d < dim; d++) {
-                sum[d] += v[d];
-            }
-            count++;
-        }
-        if (count == 0) {
-            return sum;
+            vectorization.vectors().get(doc.vectorIndex()).addTo(sum);
         }
-        for (int d = 0; d < dim; d++) {
-            sum[d] /= count;
+        for (int d = 0; d < sum.length; d++) {
+            sum[d] /= cluster.size();
         }
         normalize(sum);
         return sum;
     }
 
-    private int[] kmeans(List<double[]> vectors, int k) {
+    private int selectK(List<SparseVector> vectors, int dim, int upperK) {
+        if (upperK <= 2 || kSelectionSample <= 0 || kSelectionBudgetMs <= 0) {
+            return upperK;
+        }
+        long deadline = System.currentTimeMillis() + kSelectionBudgetMs;
+        List<SparseVector> nonZero = vectors.stream().filter(v -> v.normSq() > 0).toList();
+        int sampleSize = Math.min(kSelectionSample, nonZero.size());
+        if (sampleSize < upperK * MIN_CLUSTER_SIZE) {
+            return upperK;
+        }
+        List<SparseVector> sample = new ArrayList<>(sampleSize);
+        double step = (double) nonZero.size() / sampleSize;
+        for (int i = 0; i < sampleSize; i++) {
+            sample.add(nonZero.get((int) (i * step)));
+        }
+
+        List<Integer> rows = IntStream.range(0, sampleSize).boxed().toList();
+        List<float[]> distances = computePool.map(rows, i -> {
+            float[] row = new float[sampleSize];
+            SparseVector v = sample.get(i);
+            for (int j = 0; j < sampleSize; j++) {
+                row[j] = (float) (v.distSq(sample.get(j)) / 2.0);
+            }
+            return row;
+        });
+        if (System.currentTimeMillis() > deadline) {
+            return upperK;
+        }
+
+        List<Integer> candidates = IntStream.rangeClosed(2, upperK).boxed().toList();
+        List<Double> scores = computePool.map(candidates, k -> System.currentTimeMillis() > deadline
+                ? null
+                : bestSilhouette(sample, distances, dim, k, deadline));
+
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (Double score : scores) {
+            if (score != null) {
+                bestScore = Math.max(bestScore, score);
+            }
+        }
+        if (bestScore <= 0) {
+            return upperK;
+        }
+        for (int i = 0; i < candidates.size(); i++) {
+            Double score = scores.get(i);
+            if (score != null && score >= bestScore * (1.0 - K_SELECTION_TOLERANCE)) {
+                return candidates.get(i);
+            }
+        }
+        return upperK;
+    }
+
+    private static double silhouette(List<float[]> distances, int[] assign, int k) {
+        int n = assign.length;
+        int[] sizes = new int[k];
+        for (int c : assign) {
+            sizes[c]++;
+        }
+        double total = 0.0;
+        double[] sums = new double[k];
+        for (int i = 0; i < n; i++) {
+            Arrays.fill(sums, 0.0);
+            float[] row = distances.get(i);
+            for (int j = 0; j < n; j++) {
+                sums[assign[j]] += row[j];
+            }
+            int own = assign[i];
+            if (sizes[own] <= 1) {
+                continue;
+            }
+            double a = sums[own] / (sizes[own] - 1);
+            double b = Double.POSITIVE_INFINITY;
+            for (int c = 0; c < k; c++) {
+                if (c != own && sizes[c] > 0) {
+                    b = Math.min(b, sums[c] / sizes[c]);
+                }
+            }
+            if (b == Double.POSITIVE_INFINITY) {
+                continue;
+            }
+            double denom = Math.max(a, b);
+            total += denom <= 0 ? 0.0 : (b - a) / denom;
+        }
+        return total / n;
+    }
+
+    private double bestSilhouette(List<SparseVector> sample, List<float[]> distances, int dim, int k, long deadline) {
+        Random random = new Random(k);
+        double best = Double.NEGATIVE_INFINITY;
+        for (int restart = 0; restart < K_SELECTION_RESTARTS; restart++) {
+            if (restart > 0 && System.currentTimeMillis() > deadline) {
+                break;
+            }
+            int[] assign = kmeans(sample, dim, plusPlusCentroids(sample, dim, k, random));
+            best = Math.max(best, silhouette(distances, assign, k));
+        }
+        return best;
+    }
+
+    private static double[][] plusPlusCentroids(List<SparseVector> vectors, int dim, int k, Random random) {
         int n = vectors.size();
-        int dim = vectors.get(0).length;
-        double[][] centroids = initCentroids(vectors, k);
+        double[][] centroids = new double[k][];
+        double[] minDist = new double[n];
+        Arrays.fill(minDist, Double.POSITIVE_INFINITY);
+        SparseVector latest = vectors.get(random.nextInt(n));
+        centroids[0] = latest.toDense(dim);
+        for (int c = 1; c < k; c++) {
+            double total = 0.0;
+            for (int i = 0; i < n; i++) {
+                minDist[i] = Math.min(minDist[i], vectors.get(i).distSq(latest));
+                total += minDist[i];
+            }
+            int pick = random.nextInt(n);
+            if (total > 0) {
+                double target = random.nextDouble() * total;
+                for (int i = 0; i < n; i++) {
+                    target -= minDist[i];
+                    if (target <= 0) {
+                        pick = i;
+                        break;
+                    }
+                }
+            }
+            latest = vectors.get(pick);
+            centroids[c] = latest.toDense(dim);
+        }
+        return centroids;
+    }
+
+    private int[] kmeans(List<SparseVector> vectors, int dim, double[][] initial) {
+        int n = vectors.size();
+        int k = initial.length;
+        List<int[]> slices = slices(n);
+        double[][] centroids = initial;
+        double[] centroidNormSq = normsSq(centroids);
         int[] assign = new int[n];
         Arrays.fill(assign, -1);
 
         for (int iter = 0; iter < MAX_ITER; iter++) {
+            double[][] current = centroids;
+            double[] currentNormSq = centroidNormSq;
+            List<AssignPartial> partials = computePool.map(slices, slice -> assignSlice(vectors, slice, current, currentNormSq, assign, dim));
+
             boolean changed = false;
-            for (int i = 0; i < n; i++) {
-                int best = nearest(centroids, vectors.get(i));
-                if (assign[i] != best) {
-                    assign[i] = best;
-                    changed = true;
+            double[][] next = new double[k][dim];
+            int[] counts = new int[k];
+            for (AssignPartial partial : partials) {
+                changed |= partial.changed();
+                for (int c = 0; c < k; c++) {
+                    counts[c] += partial.counts()[c];
+                    double[] from = partial.sums()[c];
+                    double[] to = next[c];
+                    for (int d = 0; d < dim; d++) {
+                        to[d] += from[d];
+                    }
                 }
             }
             if (!changed && iter > 0) {
                 break;
             }
 
-            double[][] next = new double[k][dim];
-            int[] counts = new int[k];
-            for (int i = 0; i < n; i++) {
-                int c = assign[i];
-                counts[c]++;
-                double[] v = vectors.get(i);
-                for (int d = 0; d < dim; d++) {
-                    next[c][d] += v[d];
-                }
-            }
             for (int c = 0; c < k; c++) {
                 if (counts[c] == 0) {
-                    next[c] = Arrays.copyOf(vectors.get(c % n), dim);
+                    next[c] = vectors.get(c % n).toDense(dim);
                     continue;
                 }
                 for (int d = 0; d < dim; d++) {
@@ -528,45 +1048,91 @@ public class ClusterAnalysisService {
                 normalize(next[c]);
             }
             centroids = next;
+            centroidNormSq = normsSq(centroids);
         }
 
         return assign;
     }
 
-    private double[][] initCentroids(List<double[]> vectors, int k) {
-        int n = vectors.size();
-        int dim = vectors.get(0).length;
-        double[][] centroids = new double[k][dim];
+    private static AssignPartial assignSlice(
+            List<SparseVector> vectors,
+            int[] slice,
+            double[][] centroids,
+            double[] centroidNormSq,
+            int[] assign,
+            int dim
+    ) {
+        int k = centroids.length;
+        double[][] sums = new double[k][dim];
+        int[] counts = new int[k];
+        boolean changed = false;
+        for (int i = slice[0]; i < slice[1]; i++) {
+            SparseVector vector = vectors.get(i);
+            int best = nearest(centroids, centroidNormSq, vector);
+            if (assign[i] != best) {
+                assign[i] = best;
+                changed = true;
+            }
+            counts[best]++;
+            vector.addTo(sums[best]);
+        }
+        return new AssignPartial(sums, counts, changed);
+    }
 
-        int first = 0;
-        centroids[0] = Arrays.copyOf(vectors.get(first), dim);
+    private double[][] initCentroids(List<SparseVector> vectors, int dim, int k) {
+        int n = vectors.size();
+        List<int[]> slices = slices(n);
+        double[][] centroids = new double[k][];
+        double[] minDist = new double[n];
+        Arrays.fill(minDist, Double.POSITIVE_INFINITY);
 
-        List<Integer> chosen = new ArrayList<>();
-        chosen.add(first);
+        int chosen = 0;
+        centroids[0] = vectors.get(chosen).toDense(dim);
         for (int c = 1; c < k; c++) {
+            SparseVector latest = vectors.get(chosen);
+            List<SeedCandidate> candidates = computePool.map(slices, slice -> {
+                double bestDist = -1;
+                int bestIdx = slice[0];
+                for (int i = slice[0]; i < slice[1]; i++) {
+                    double d = Math.min(minDist[i], vectors.get(i).distSq(latest));
+                    minDist[i] = d;
+                    if (d > bestDist) {
+                        bestDist = d;
+                        bestIdx = i;
+                    }
+                }
+                return new SeedCandidate(bestIdx, bestDist);
+            });
+
             double bestDist = -1;
             int bestIdx = 0;
-            for (int i = 0; i < n; i++) {
-                double d = Double.POSITIVE_INFINITY;
-                for (int idx : chosen) {
-                    d = Math.min(d, distSq(vectors.get(i), vectors.get(idx)));
-                }
-                if (d > bestDist) {
-                    bestDist = d;
-                    bestIdx = i;
+            for (SeedCandidate candidate : candidates) {
+                if (candidate.dist() > bestDist) {
+                    bestDist = candidate.dist();
+                    bestIdx = candidate.index();
                 }
             }
-            chosen.add(bestIdx);
-            centroids[c] = Arrays.copyOf(vectors.get(bestIdx), dim);
+            chosen = bestIdx;
+            centroids[c] = vectors.get(chosen).toDense(dim);
         }
         return centroids;
     }
 
-    private int nearest(double[][] centroids, double[] vector) {
+    private List<int[]> slices(int n) {
+        int parts = Math.max(1, Math.min(computePool.parallelism() * 2, (n + MIN_PARALLEL_SLICE - 1) / MIN_PARALLEL_SLICE));
+        int size = (n + parts - 1) / parts;
+        List<int[]> slices = new ArrayList<>(parts);
+        for (int from = 0; from < n; from += size) {
+            slices.add(new int[]{from, Math.min(n, from + size)});
+        }
+        return slices;
+    }
+
+    private static int nearest(double[][] centroids, double[] centroidNormSq, SparseVector vector) {
         double best = Double.POSITIVE_INFINITY;
         int bestIdx = 0;
         for (int i = 0; i < centroids.length; i++) {
-            double d = distSq(centroids[i], vector);
+            double d = vector.distSq(centroids[i], centroidNormSq[i]);
             if (d < best) {
                 best = d;
                 bestIdx = i;
@@ -575,6 +1141,18 @@ public class ClusterAnalysisService {
         return bestIdx;
     }
 
+    private static double[] normsSq(double[][] centroids) {
+        double[] norms = new double[centroids.length];
+        for (int c = 0; c < centroids.length; c++) {
+            double sum = 0.0;
+            for (double x : centroids[c]) {
+                sum += x * x;
+            }
+            norms[c] = sum;
+        }
+        return norms;
+    }
+
     private static double distSq(double[] a, double[] b) {
         int dim = Math.min(a.length, b.length);
         double sum = 0.0;
@@ -599,136 +1177,155 @@ public class ClusterAnalysisService {
         }
     }
 
-    private Vectorization vectorize(List<Doc> docs) {
+    private Vectorization vectorize(List<Doc> docs, TermSpace space) {
         int n = docs.size();
-        Map<String, Integer> df = new HashMap<>();
-        for (Doc doc : docs) {
-            Set<String> uniq = new HashSet<>(doc.tokens());
-            for (String token : uniq) {
-                if (token == null || token.isBlank()) {
-                    continue;
+        int[] df = space.df();
+        if (df == null) {
+            df = new int[space.terms().length];
+            for (Doc doc : docs) {
+                for (int termId : doc.terms().termIds()) {
+                    df[termId]++;
                 }
-                df.merge(token, 1, Integer::sum);
             }
         }
 
         int minDf = 2;
-        List<String> vocab = buildVocabulary(df, minDf);
-        if (vocab.isEmpty()) {
-            vocab = buildVocabulary(df, 1);
+        int[] vocab = buildVocabulary(space.terms(), df, minDf);
+        if (vocab.length == 0) {
+            vocab = buildVocabulary(space.terms(), df, 1);
         }
-        if (vocab.isEmpty()) {
-            return new Vectorization(List.of(), 0);
+        if (vocab.length == 0) {
+            return new Vectorization(List.of(), 0, 0);
         }
 
-        Map<String, Integer> index = new HashMap<>();
-        for (int i = 0; i < vocab.size(); i++) {
-            index.put(vocab.get(i), i);
+        int[] index = new int[space.terms().length];
+        Arrays.fill(index, -1);
+        for (int i = 0; i < vocab.length; i++) {
+            index[vocab[i]] = i;
         }
 
-        double[] idf = new double[vocab.size()];
-        for (int i = 0; i < vocab.size(); i++) {
-            int d = df.getOrDefault(vocab.get(i), 0);
-            idf[i] = Math.log((n + 1.0) / (d + 1.0)) + 1.0;
+        double[] idf = new double[vocab.length];
+        for (int i = 0; i < vocab.length; i++) {
+            idf[i] = Math.log((n + 1.0) / (df[vocab[i]] + 1.0)) + 1.0;
         }
 
-        List<double[]> vectors = new ArrayList<>(n);
+        List<SparseVector> vectors = new ArrayList<>(n);
         int nonZero = 0;
         for (int docIdx = 0; docIdx < docs.size(); docIdx++) {
             Doc doc = docs.get(docIdx);
-            int dim = vocab.size();
-            int[] counts = new int[dim];
+            int[] termIds = doc.terms().termIds();
+            int[] termCounts = doc.terms().counts();
             int total = 0;
-            for (String token : doc.tokens()) {
-                Integer idx = index.get(token);
-                if (idx == null) {
-                    continue;
+            int nnz = 0;
+            for (int t = 0; t < termIds.length; t++) {
+                if (index[termIds[t]] >= 0) {
+                    total += termCounts[t];
+                    nnz++;
                 }
-                counts[idx]++;
-                total++;
             }
-            double[] vec = new double[dim];
-            if (total > 0) {
-                for (int i = 0; i < dim; i++) {
-                    if (counts[i] == 0) {
-                        continue;
-                    }
-                    double tf = (double) counts[i] / total;
-                    vec[i] = tf * idf[i];
+            int[] indices = new int[nnz];
+            double[] values = new double[nnz];
+            int pos = 0;
+            for (int t = 0; t < termIds.length && total > 0; t++) {
+                int idx = index[termIds[t]];
+                if (idx < 0) {
+                    continue;
                 }
-                normalize(vec);
+                indices[pos] = idx;
+                values[pos] = (double) termCounts[t] / total * idf[idx];
+                pos++;
             }
-            if (vectorNorm(vec) > 0) {
+            SparseVector vec = SparseVector.unit(indices, values, nnz);
+            if (vec.normSq() > 0) {
                 nonZero++;
             }
             vectors.add(vec);
             doc.setVectorIndex(docIdx);
         }
 
-        return new Vectorization(vectors, nonZero);
+        return new Vectorization(vectors, vocab.length, nonZero);
     }
 
-    private static double vectorNorm(double[] vec) {
-        double sum = 0.0;
-        for (double v : vec) {
-            sum += v * v;
+    private static SparseVector vectorizeTokens(int[] termIds, int[] vocab, double[] idf) {
+        int[] mapped = new int[termIds.length];
+        int total = 0;
+        for (int termId : termIds) {
+            if (termId < vocab.length && vocab[termId] >= 0) {
+                mapped[total++] = vocab[termId];
+            }
+        }
+        Arrays.sort(mapped, 0, total);
+        int[] indices = new int[total];
+        double[] values = new double[total];
+        int pos = 0;
+        for (int i = 0; i < total; ) {
+            int j = i;
+            while (j < total && mapped[j] == mapped[i]) {
+                j++;
+            }
+            indices[pos] = mapped[i];
+            values[pos] = (double) (j - i) / total * idf[mapped[i]];
+            pos++;
+            i = j;
         }
-        return Math.sqrt(sum);
+        return SparseVector.unit(indices, values, pos);
     }
 
-    private List<String> buildVocabulary(Map<String, Integer> df, int minDf) {
-        return df.entrySet().stream()
-                .filter(e -> e.getKey() != null && !e.getKey().isBlank())
-                .filter(e -> e.getValue() >= minDf)
-                .sorted((a, b) -> {
-                    int c1 = Integer.compare(b.getValue(), a.getValue());
-                    if (c1 != 0) {
-                        return c1;
-                    }
-                    int c2 = Integer.compare(b.getKey().length(), a.getKey().length());
-                    if (c2 != 0) {
-                        return c2;
-                    }
-                    return a.getKey().compareTo(b.getKey());
-                })
-                .limit(MAX_FEATURES)
-                .map(Map.Entry::getKey)
+    private List<String> topTerms(Map<Integer, Integer> termFreq) {
+        List<String> names = new ArrayList<>(termFreq.size());
+        List<Integer> counts = new ArrayList<>(termFreq.size());
+        for (Map.Entry<Integer, Integer> entry : termFreq.entrySet()) {
+            String term = termDictionary.term(entry.getKey());
+            if (term != null) {
+                names.add(term);
+                counts.add(entry.getValue());
+            }
+        }
+        String[] terms = names.toArray(new String[0]);
+        int[] freq = counts.stream().mapToInt(Integer::intValue).toArray();
+        return IntStream.range(0, terms.length)
+                .boxed()
+                .sorted(termOrder(terms, freq))
+                .limit(TOP_TERMS)
+                .map(t -> terms[t])
                 .toList();
     }
 
-    private ClusterResult buildClusterResult(List<Doc> allDocs, List<Doc> clusterDocs) {
+    private int[] buildVocabulary(String[] terms, int[] df, int minDf) {
+        return IntStream.range(0, df.length)
+                .filter(t -> df[t] >= minDf)
+                .boxed()
+                .sorted(termOrder(terms, df))
+                .limit(MAX_FEATURES)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private ClusterResult buildClusterResult(TermSpace space, List<Doc> clusterDocs) {
         if (clusterDocs == null || clusterDocs.isEmpty()) {
             return new ClusterResult(List.of(), List.of(), 0.0);
         }
 
-        Map<String, Integer> tokenFreq = new HashMap<>();
+        String[] terms = space.terms();
+        int[] tokenFreq = new int[terms.length];
         int negCount = 0;
         for (Doc doc : clusterDocs) {
             if (doc.isNeg()) {
                 negCount++;
             }
-            for (String token : doc.tokens()) {
-                if (token == null || token.isBlank()) {
-                    continue;
-                }
-                tokenFreq.merge(token, 1, Integer::sum);
+            int[] termIds = doc.terms().termIds();
+            int[] termCounts = doc.terms().counts();
+            for (int t = 0; t < termIds.length; t++) {
+                tokenFreq[termIds[t]] += termCounts[t];
             }
         }
 
-        List<String> topTerms = tokenFreq.entrySet().stream()
-                .sorted((a, b) -> {
-                    int c1 = Integer.compare(b.getValue(), a.getValue());
-                    if (c1 != 0) {
-                        return c1;
-                    }
-                    int c2 = Integer.compare(b.getKey().length(), a.getKey().length());
-                    if (c2 != 0) {
-                        return c2;
-                    }
-                    return a.getKey().compareTo(b.getKey());
-                })
+        List<String> topTerms = IntStream.range(0, tokenFreq.length)
+                .filter(t -> tokenFreq[t] > 0)
+                .boxed()
+                .sorted(termOrder(terms, tokenFreq))
                 .limit(TOP_TERMS)
-                .map(Map.Entry::getKey)
+                .map(t -> terms[t])
                 .toList();
 
         List<Long> orderedReviewIds = clusterDocs.stream()
@@ -740,6 +1337,20 @@ public class ClusterAnalysisService {
         return new ClusterResult(orderedReviewIds, topTerms, negRate);
     }
 
+    private static Comparator<Integer> termOrder(String[] terms, int[] freq) {
+        return (a, b) -> {
+            int c1 = Integer.compare(freq[b], freq[a]);
+            if (c1 != 0) {
+                return c1;
+            }
+            int c2 = Integer.compare(terms[b].length(), terms[a].length());
+            if (c2 != 0) {
+                return c2;
+            }
+            return terms[a].compareTo(terms[b]);
+        };
+    }
+
     private static boolean isNeg(String sentimentLabel) {
         return "NEG".equalsIgnoreCase(sentimentLabel);
     }
@@ -748,17 +1359,21 @@ public class ClusterAnalysisService {
         return value == null ? null : Date.valueOf(value);
     }
 
-    private record ReviewRow(Long id, String contentClean, String tokensJson, String sentimentLabel) {}
+    private static long millis(Timestamp value) {
+        return value == null ? 0L : value.getTime();
+    }
+
+    private record ReviewRow(Long id, String sentimentLabel, long analyzedAt) {}
 
     private static class Doc {
         private final Long reviewId;
-        private final List<String> tokens;
+        private final ClusterTermCache.DocTerms terms;
         private final boolean neg;
         private int vectorIndex;
 
-        private Doc(Long reviewId, List<String> tokens, boolean neg) {
+        private Doc(Long reviewId, ClusterTermCache.DocTerms terms, boolean neg) {
             this.reviewId = reviewId;
-            this.tokens = tokens == null ? List.of() : tokens;
+            this.terms = terms;
             this.neg = neg;
         }
 
@@ -766,8 +1381,8 @@ public class ClusterAnalysisService {
             return reviewId;
         }
 
-        public List<String> tokens() {
-            return tokens;
+        public ClusterTermCache.DocTerms terms() {
+            return terms;
         }
 
         public boolean isNeg() {
@@ -783,7 +1398,17 @@ public class ClusterAnalysisService {
         }
     }
 
-    private record Vectorization(List<double[]> vectors, int nonZeroCount) {}
+    private record NewCluster(String topTermsJson, int size, double negRate) {}
+
+    private record StreamDoc(long id, int[] termIds, boolean neg) {}
+
+    private record TermSpace(String[] terms, int[] df) {}
+
+    private record Vectorization(List<SparseVector> vectors, int dim, int nonZeroCount) {}
+
+    private record AssignPartial(double[][] sums, int[] counts, boolean changed) {}
+
+    private record SeedCandidate(int index, double dist) {}
 
     private record ClusterRow(Long id, String topTermsJson, int size, double negRate) {}
 
@@ -0,0 +1,163 @@
+package com.wh.reputation.analysis;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Component
+public class ClusterTermCache {
+    private final int maxProducts;
+    private final int maxDocs;
+    private final Map<Long, ProductTerms> products;
+
+    public ClusterTermCache(
+            @Value("${reputation.cluster.cache-products:16}") int maxProducts,
+            @Value("${reputation.cluster.cache-docs:20000}") int maxDocs
+    ) {
+        this.maxProducts = Math.max(1, maxProducts);
+        this.maxDocs = Math.max(0, maxDocs);
+        this.products = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, ProductTerms> eldest) {
+                return size() > ClusterTermCache.this.maxProducts;
+            }
+        };
+    }
+
+    ProductTerms product(Long productId) {
+        synchronized (products) {
+            return products.computeIfAbsent(productId, k -> new ProductTerms());
+        }
+    }
+
+    int maxDocs() {
+        return maxDocs;
+    }
+
+    void evict(Map<Long, ? extends Collection<Long>> reviewIdsByProduct) {
+        if (reviewIdsByProduct.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    applyEvict(reviewIdsByProduct);
+                }
+            });
+        } else {
+            applyEvict(reviewIdsByProduct);
+        }
+    }
+
+    private void applyEvict(Map<Long, ? extends Collection<Long>> reviewIdsByProduct) {
+        for (Map.Entry<Long, ? extends Collection<Long>> entry : reviewIdsByProduct.entrySet()) {
+            ProductTerms terms;
+            synchronized (products) {
+                terms = products.get(entry.getKey());
+            }
+            if (terms == null) {
+                continue;
+            }
+            synchronized (terms) {
+                for (Long reviewId : entry.getValue()) {
+                    terms.remove(reviewId);
+                }
+            }
+        }
+    }
+
+    record DocTerms(int[] termIds, int[] counts, long analyzedAt) {}
+
+    static final class ProductTerms {
+        private final List<String> terms = new ArrayList<>();
+        private final Map<Long, DocTerms> docs = new HashMap<>();
+        private int[] localIds = new int[0];
+        private int[] df = new int[64];
+
+        DocTerms get(Long reviewId) {
+            return docs.get(reviewId);
+        }
+
+        int size() {
+            return docs.size();
+        }
+
+        String[] terms() {
+            return terms.toArray(new String[0]);
+        }
+
+        int[] df() {
+            return Arrays.copyOf(df, terms.size());
+        }
+
+        void clear() {
+            terms.clear();
+            docs.clear();
+            localIds = new int[0];
+            df = new int[64];
+        }
+
+        DocTerms put(Long reviewId, int[] globalIds, long analyzedAt, TermDictionary dictionary) {
+            remove(reviewId);
+            Map<Integer, Integer> counts = new LinkedHashMap<>();
+            for (int globalId : globalIds) {
+                int termId = termId(globalId, dictionary);
+                if (termId >= 0) {
+                    counts.merge(termId, 1, Integer::sum);
+                }
+            }
+            int[] ids = new int[counts.size()];
+            int[] values = new int[counts.size()];
+            int i = 0;
+            for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+                ids[i] = entry.getKey();
+                values[i] = entry.getValue();
+                df[ids[i]]++;
+                i++;
+            }
+            DocTerms doc = new DocTerms(ids, values, analyzedAt);
+            docs.put(reviewId, doc);
+            return doc;
+        }
+
+        void remove(Long reviewId) {
+            DocTerms doc = docs.remove(reviewId);
+            if (doc == null) {
+                return;
+            }
+            for (int termId : doc.termIds()) {
+                df[termId]--;
+            }
+        }
+
+        private int termId(int globalId, TermDictionary dictionary) {
+            if (globalId < localIds.length && localIds[globalId] > 0) {
+                return localIds[globalId] - 1;
+            }
+            String term = dictionary.term(globalId);
+            if (term == null) {
+                return -1;
+            }
+            int next = terms.size();
+            terms.add(term);
+            if (globalId >= localIds.length) {
+                localIds = Arrays.copyOf(localIds, Math.max(globalId + 1, localIds.length * 2));
+            }
+            localIds[globalId] = next + 1;
+            if (next >= df.length) {
+                df = Arrays.copyOf(df, df.length * 2);
+            }
+            return next;
+        }
+    }
+}
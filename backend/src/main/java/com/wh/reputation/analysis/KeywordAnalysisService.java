@@ -3,36 +3,41 @@ package com.wh.reputation.analysis;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.wh.reputation.common.BadRequestException;
-import com.wh.reputation.persistence.AspectEntity;
-import com.wh.reputation.persistence.AspectRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import java.sql.Timestamp;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class KeywordAnalysisService {
+    private static final Logger log = LoggerFactory.getLogger(KeywordAnalysisService.class);
+
     private final JdbcTemplate jdbcTemplate;
-    private final AspectRepository aspectRepository;
-    private final SentimentLexicon sentimentLexicon;
-    private final Stopwords stopwords;
+    private final AnalysisDictionaries dictionaries;
+    private final TermDictionary termDictionary;
     private final ObjectMapper objectMapper;
+    private final ObjectProvider<AnalysisJobService> analysisJobService;
+    private final Map<Long, Long> requeuedSignatures = new ConcurrentHashMap<>();
+    private volatile CompiledDictionary compiled;
 
     public KeywordAnalysisService(
             JdbcTemplate jdbcTemplate,
-            AspectRepository aspectRepository,
-            SentimentLexicon sentimentLexicon,
-            Stopwords stopwords,
-            ObjectMapper objectMapper
+            AnalysisDictionaries dictionaries,
+            TermDictionary termDictionary,
+            ObjectMapper objectMapper,
+            ObjectProvider<AnalysisJobService> analysisJobService
     ) {
         this.jdbcTemplate = jdbcTemplate;
-        this.aspectRepository = aspectRepository;
-        this.sentimentLexicon = sentimentLexicon;
-        this.stopwords = stopwords;
+        this.dictionaries = dictionaries;
+        this.termDictionary = termDictionary;
         this.objectMapper = objectMapper;
+        this.analysisJobService = analysisJobService;
     }
 
     public KeywordsResponseDto keywords(Long productId, Long aspectId, LocalDate start, LocalDate end, Integer topN) {
@@ -64,9 +69,119 @@ public class KeywordAnalysisService {
     }
 
     public Map<String, KeywordFreq> computeStatsMap(Long productId, Long aspectId, LocalDate start, LocalDate end) {
-        LocalDateTime startTime = start == null ? null : start.atStartOfDay();
-        LocalDateTime endExclusive = end == null ? null : end.plusDays(1).atStartOfDay();
+        KeywordExtractor extractor = keywordExtractor();
+        if (keywordRowsCurrent(productId, start, end, extractor)) {
+            return aggregateStored(extractor, productId, aspectId, start, end);
+        }
+        return scanContent(extractor, productId, aspectId, start, end);
+    }
+
+    private boolean keywordRowsCurrent(Long productId, LocalDate start, LocalDate end, KeywordExtractor extractor) {
+        List<Object> params = new ArrayList<>();
+        params.add(extractor.signature());
+        params.add(productId);
+        StringBuilder sql = new StringBuilder("""
+                select r.keyword_sig is not null and r.keyword_sig <> ? as outdated
+                from review r
+                where r.product_id = ?
+                """);
+        appendTimeFilter(sql, params, start, end);
+        sql.append(" and (r.keyword_sig is null or r.keyword_sig <> ?) order by outdated desc limit 1");
+        params.add(extractor.signature());
+
+        List<Boolean> stale = jdbcTemplate.queryForList(sql.toString(), Boolean.class, params.toArray());
+        if (stale.isEmpty()) {
+            requeuedSignatures.remove(productId);
+            return true;
+        }
+        if (Boolean.TRUE.equals(stale.get(0))) {
+            requeue(productId, extractor.signature());
+        }
+        return false;
+    }
+
+    private void requeue(Long productId, long signature) {
+        Long previous = requeuedSignatures.put(productId, signature);
+        if (previous != null && previous == signature) {
+            return;
+        }
+        Integer queued = jdbcTemplate.queryForObject("""
+                        select count(*)
+                        from analysis_job j
+                        where j.job_type = 'PRODUCT'
+                          and j.product_id = ?
+                          and j.start_date is null
+                          and j.end_date is null
+                          and j.status in ('pending', 'running')
+                        """,
+                Integer.class,
+                productId
+        );
+        if (queued != null && queued > 0) {
+            return;
+        }
+        long jobId = analysisJobService.getObject().submitProduct(productId, null, null);
+        log.info("keyword dictionary changed, queued analysis job {} for product {}", jobId, productId);
+    }
 
+    private Map<String, KeywordFreq> aggregateStored(
+            KeywordExtractor extractor,
+            Long productId,
+            Long aspectId,
+            LocalDate start,
+            LocalDate end
+    ) {
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql;
+        if (aspectId == null) {
+            sql = new StringBuilder("""
+                    select rk.keyword_id as termId,
+                           sum(rk.cnt) as freq,
+                           sum(case when rk.sentiment_label = 'NEG' then rk.cnt else 0 end) as negFreq
+                    from review_keyword rk
+                    join review r on r.id = rk.review_id
+                    where rk.product_id = ?
+                    """);
+            params.add(productId);
+        } else {
+            sql = new StringBuilder("""
+                    select rk.keyword_id as termId,
+                           sum(rk.cnt) as freq,
+                           sum(case when rar.sentiment_label = 'NEG' then rk.cnt else 0 end) as negFreq
+                    from review_keyword rk
+                    join review r on r.id = rk.review_id
+                    join review_aspect_result rar on rar.review_id = rk.review_id and rar.aspect_id = ?
+                    where rk.product_id = ?
+                    """);
+            params.add(aspectId);
+            params.add(productId);
+        }
+        appendTimeFilter(sql, params, start, end);
+        sql.append(" group by rk.keyword_id");
+
+        Map<String, KeywordFreq> stats = new HashMap<>();
+        jdbcTemplate.query(sql.toString(), rs -> {
+            String term = termDictionary.term(rs.getInt("termId"));
+            if (term == null || !extractor.contains(term)) {
+                return;
+            }
+            int freq = rs.getInt("freq");
+            int negFreq = rs.getInt("negFreq");
+            KeywordFreq stat = new KeywordFreq();
+            stat.add(freq - negFreq, false);
+            stat.add(negFreq, true);
+            stats.put(term, stat);
+        }, params.toArray());
+        return stats;
+    }
+
+    private Map<String, KeywordFreq> scanContent(
+            KeywordExtractor extractor,
+            Long productId,
+            Long aspectId,
+            LocalDate start,
+            LocalDate end
+    ) {
         List<Object> params = new ArrayList<>();
         StringBuilder sql;
         if (aspectId == null) {
@@ -89,43 +204,80 @@ public class KeywordAnalysisService {
             params.add(productId);
             params.add(aspectId);
         }
+        appendTimeFilter(sql, params, start, end);
 
-        if (startTime != null) {
-            sql.append(" and coalesce(r.review_time, r.created_at) >= ?");
-            params.add(Timestamp.valueOf(startTime));
+        int[] negCounts = new int[extractor.termCount()];
+        int[] otherCounts = new int[extractor.termCount()];
+        jdbcTemplate.query(sql.toString(), rs -> {
+            boolean isNeg = "NEG".equalsIgnoreCase(rs.getString("sentimentLabel"));
+            extractor.countInto(rs.getString("contentClean"), isNeg ? negCounts : otherCounts);
+        }, params.toArray());
+
+        Map<String, KeywordFreq> stats = new HashMap<>();
+        for (int i = 0; i < extractor.termCount(); i++) {
+            if (negCounts[i] == 0 && otherCounts[i] == 0) {
+                continue;
+            }
+            KeywordFreq freq = new KeywordFreq();
+            freq.add(otherCounts[i], false);
+            freq.add(negCounts[i], true);
+            stats.put(extractor.term(i), freq);
         }
-        if (endExclusive != null) {
-            sql.append(" and coalesce(r.review_time, r.created_at) < ?");
-            params.add(Timestamp.valueOf(endExclusive));
+        return stats;
+    }
+
+    private static void appendTimeFilter(StringBuilder sql, List<Object> params, LocalDate start, LocalDate end) {
+        if (start != null) {
+            sql.append(" and r.effective_time >= ?");
+            params.add(Timestamp.valueOf(start.atStartOfDay()));
         }
+        if (end != null) {
+            sql.append(" and r.effective_time < ?");
+            params.add(Timestamp.valueOf(end.plusDays(1).atStartOfDay()));
+        }
+    }
 
-        List<ReviewContentRow> rows = jdbcTemplate.query(sql.toString(), (rs, rowNum) -> new ReviewContentRow(
-                rs.getString("contentClean"),
-                rs.getString("sentimentLabel")
-        ), params.toArray());
+    KeywordExtractor keywordExtractor() {
+        return keywordExtractor(dictionaries.current());
+    }
 
-        List<String> dictionary = buildDictionary();
-        Set<String> stopwordSet = stopwords == null ? Set.of() : stopwords.words();
+    KeywordExtractor keywordExtractor(AnalysisDictionaries.Snapshot dictionarySnapshot) {
+        String aspectSignature = loadAspectSignature();
+        SentimentLexicon lexicon = dictionarySnapshot.lexicon();
+        Set<String> stopwordSet = dictionarySnapshot.stopwords().words();
+        CompiledDictionary snapshot = compiled;
+        if (snapshot != null && snapshot.matches(aspectSignature, lexicon, stopwordSet)) {
+            return snapshot.extractor();
+        }
 
-        Map<String, KeywordFreq> stats = new HashMap<>();
-        for (ReviewContentRow row : rows) {
-            Map<String, Integer> counts = KeywordExtractor.extractCounts(row.contentClean(), dictionary, stopwordSet);
-            if (counts.isEmpty()) {
-                continue;
-            }
-            boolean isNeg = "NEG".equalsIgnoreCase(row.sentimentLabel());
-            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
-                KeywordFreq freq = stats.computeIfAbsent(entry.getKey(), k -> new KeywordFreq());
-                freq.add(entry.getValue(), isNeg);
+        synchronized (this) {
+            snapshot = compiled;
+            if (snapshot != null && snapshot.matches(aspectSignature, lexicon, stopwordSet)) {
+                return snapshot.extractor();
             }
+            List<String> dictionary = buildDictionary(lexicon);
+            KeywordExtractor extractor = snapshot != null && snapshot.dictionary().equals(dictionary) && snapshot.stopwords() == stopwordSet
+                    ? snapshot.extractor()
+                    : KeywordExtractor.compile(dictionary, stopwordSet);
+            compiled = new CompiledDictionary(aspectSignature, lexicon, dictionary, stopwordSet, extractor);
+            return extractor;
         }
-        return stats;
     }
 
-    private List<String> buildDictionary() {
+    private String loadAspectSignature() {
+        return jdbcTemplate.queryForObject("""
+                        select concat(count(*), ':', coalesce(max(a.id), 0), ':',
+                                      coalesce(sum(crc32(concat_ws(':', a.id, a.keywords_json))), 0))
+                        from aspect a
+                        """,
+                String.class
+        );
+    }
+
+    private List<String> buildDictionary(SentimentLexicon sentimentLexicon) {
         Set<String> dict = new HashSet<>();
-        for (AspectEntity aspect : aspectRepository.findAll()) {
-            addAspectKeywords(dict, aspect.getKeywordsJson());
+        for (String keywordsJson : jdbcTemplate.queryForList("select a.keywords_json from aspect a", String.class)) {
+            addAspectKeywords(dict, keywordsJson);
         }
         if (sentimentLexicon != null) {
             dict.addAll(Optional.ofNullable(sentimentLexicon.pos()).orElse(List.of()));
@@ -134,7 +286,7 @@ public class KeywordAnalysisService {
         dict.removeIf(s -> s == null || s.isBlank());
 
         List<String> list = new ArrayList<>(dict);
-        list.sort((a, b) -> Integer.compare(b.length(), a.length()));
+        list.sort(Comparator.comparingInt(String::length).reversed().thenComparing(Comparator.naturalOrder()));
         return list;
     }
 
@@ -188,5 +340,15 @@ public class KeywordAnalysisService {
         }
     }
 
-    private record ReviewContentRow(String contentClean, String sentimentLabel) {}
+    private record CompiledDictionary(
+            String aspectSignature,
+            SentimentLexicon lexicon,
+            List<String> dictionary,
+            Set<String> stopwords,
+            KeywordExtractor extractor
+    ) {
+        boolean matches(String aspectSignature, SentimentLexicon lexicon, Set<String> stopwords) {
+            return this.aspectSignature.equals(aspectSignature) && this.lexicon == lexicon && this.stopwords == stopwords;
+        }
+    }
 }
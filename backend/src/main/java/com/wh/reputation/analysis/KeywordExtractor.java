@@ -1,18 +1,40 @@
 package com.wh.reputation.analysis;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.CRC32;
 
 final class KeywordExtractor {
-    private KeywordExtractor() {}
+    private final List<String> terms;
+    private final Map<String, Integer> termIndex;
+    private final TermAutomaton automaton;
+    private final ThreadLocal<HitCollector> scratch;
+    private final long signature;
 
-    static Map<String, Integer> extractCounts(String content, List<String> dictionary, Set<String> stopwords) {
-        Map<String, Integer> counts = new HashMap<>();
-        if (content == null || content.isBlank() || dictionary.isEmpty()) {
-            return counts;
+    private KeywordExtractor(List<String> terms) {
+        this.terms = terms;
+        this.termIndex = new HashMap<>(terms.size() * 2);
+        for (int i = 0; i < terms.size(); i++) {
+            termIndex.put(terms.get(i), i);
         }
+        this.automaton = TermAutomaton.build(terms);
+        this.scratch = ThreadLocal.withInitial(() -> new HitCollector(terms.size()));
+        CRC32 crc = new CRC32();
+        for (String term : terms) {
+            crc.update(term.getBytes(StandardCharsets.UTF_8));
+            crc.update('\n');
+        }
+        this.signature = ((long) terms.size() << 32) | crc.getValue();
+    }
+
+    static KeywordExtractor compile(Collection<String> dictionary, Set<String> stopwords) {
+        Set<String> terms = new LinkedHashSet<>();
         for (String term : dictionary) {
             if (term == null || term.isBlank()) {
                 continue;
@@ -20,26 +42,72 @@ final class KeywordExtractor {
             if (stopwords != null && stopwords.contains(term)) {
                 continue;
             }
-            int c = countOccurrences(content, term);
-            if (c > 0) {
-                counts.put(term, c);
-            }
+            terms.add(term);
         }
-        return counts;
+        return new KeywordExtractor(List.copyOf(terms));
     }
 
-    private static int countOccurrences(String content, String term) {
-        int count = 0;
-        int index = 0;
-        while (true) {
-            index = content.indexOf(term, index);
-            if (index < 0) {
-                break;
+    long signature() {
+        return signature;
+    }
+
+    int termCount() {
+        return terms.size();
+    }
+
+    String term(int index) {
+        return terms.get(index);
+    }
+
+    boolean contains(String term) {
+        return termIndex.containsKey(term);
+    }
+
+    void countInto(String content, int[] counts) {
+        if (content == null || content.isBlank() || terms.isEmpty()) {
+            return;
+        }
+        automaton.scanNonOverlapping(content, (pattern, start, end) -> counts[pattern]++);
+    }
+
+    int[] countHits(String content) {
+        if (content == null || content.isBlank() || terms.isEmpty()) {
+            return new int[0];
+        }
+        HitCollector collector = scratch.get();
+        automaton.scanNonOverlapping(content, collector);
+        return collector.drain();
+    }
+
+    private static final class HitCollector implements TermAutomaton.MatchHandler {
+        private final int[] counts;
+        private int[] touched = new int[16];
+        private int size;
+
+        private HitCollector(int termCount) {
+            this.counts = new int[termCount];
+        }
+
+        @Override
+        public void onMatch(int pattern, int start, int end) {
+            if (counts[pattern]++ == 0) {
+                if (size == touched.length) {
+                    touched = Arrays.copyOf(touched, size * 2);
+                }
+                touched[size++] = pattern;
+            }
+        }
+
+        private int[] drain() {
+            int[] pairs = new int[size * 2];
+            for (int i = 0; i < size; i++) {
+                int term = touched[i];
+                pairs[i * 2] = term;
+                pairs[i * 2 + 1] = counts[term];
+                counts[term] = 0;
             }
-            count++;
-            index = index + Math.max(1, term.length());
+            size = 0;
+            return pairs;
         }
-        return count;
     }
 }
-
@@ -0,0 +1,67 @@
+package com.wh.reputation.analysis;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.List;
+
+@Component
+public class LatestResultStore {
+    static final String TOPIC = "topic";
+    static final String CLUSTER = "cluster";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public LatestResultStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    Pointer find(String kind, Long productId, LocalDate start, LocalDate end) {
+        List<Pointer> rows = jdbcTemplate.query("""
+                        select lr.result_id as resultId,
+                               lr.created_at as createdAt
+                        from latest_result lr
+                        where lr.kind = ?
+                          and lr.product_id = ?
+                          and lr.range_key = ?
+                        """,
+                (rs, rowNum) -> new Pointer(
+                        rs.getObject("resultId") == null ? null : rs.getLong("resultId"),
+                        rs.getTimestamp("createdAt")
+                ),
+                kind, productId, rangeKey(start, end)
+        );
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    void update(String kind, Long productId, LocalDate start, LocalDate end, Long resultId, Timestamp createdAt) {
+        jdbcTemplate.update("""
+                        insert into latest_result (kind, product_id, range_key, start_date, end_date, result_id, created_at)
+                        values (?, ?, ?, ?, ?, ?, ?)
+                        on duplicate key update
+                          result_id = if(values(created_at) >= created_at, values(result_id), result_id),
+                          created_at = greatest(created_at, values(created_at))
+                        """,
+                kind,
+                productId,
+                rangeKey(start, end),
+                toSqlDate(start),
+                toSqlDate(end),
+                resultId,
+                createdAt
+        );
+    }
+
+    static String rangeKey(LocalDate start, LocalDate end) {
+        return (start == null ? "*" : start.toString()) + "~" + (end == null ? "*" : end.toString());
+    }
+
+    private static Date toSqlDate(LocalDate date) {
+        return date == null ? null : Date.valueOf(date);
+    }
+
+    record Pointer(Long resultId, Timestamp createdAt) {}
+}
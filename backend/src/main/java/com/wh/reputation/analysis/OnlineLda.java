@@ -0,0 +1,474 @@
+package com.wh.reputation.analysis;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+final class OnlineLda {
+    private static final int FILE_MAGIC = 0x4C444131;
+    private static final int FILE_VERSION = 1;
+    private static final long SEED = 42L;
+    private static final double TAU0 = 64.0;
+    private static final double KAPPA = 0.7;
+    private static final double ETA = 0.01;
+    private static final int MAX_E_STEP_ITER = 50;
+    private static final double E_STEP_TOLERANCE = 1e-3;
+    private static final double RELEVANCE_LAMBDA = 0.6;
+    private static final int SEED_ITER = 10;
+    private static final int SEED_RESTARTS = 3;
+
+    private final int topicCount;
+    private final int maxTerms;
+    private final double alpha;
+    private final Map<String, Integer> termIds = new HashMap<>();
+    private final List<String> terms = new ArrayList<>();
+    private int[] localIds = new int[0];
+    private double[][] lambda;
+    private final double[] lambdaSum;
+    private long updates;
+    private long docsSeen;
+
+    OnlineLda(int topicCount, int maxTerms) {
+        this.topicCount = topicCount;
+        this.maxTerms = maxTerms;
+        this.alpha = 1.0 / topicCount;
+        this.lambda = new double[topicCount][64];
+        this.lambdaSum = new double[topicCount];
+    }
+
+    int topicCount() {
+        return topicCount;
+    }
+
+    int termCount() {
+        return terms.size();
+    }
+
+    long updates() {
+        return updates;
+    }
+
+    long docsSeen() {
+        return docsSeen;
+    }
+
+    Doc toDoc(int[] globalIds, boolean grow, TermDictionary dictionary) {
+        Map<Integer, Integer> counts = new LinkedHashMap<>();
+        for (int globalId : globalIds) {
+            int id = localId(globalId, grow, dictionary);
+            if (id >= 0) {
+                counts.merge(id, 1, Integer::sum);
+            }
+        }
+        if (counts.isEmpty()) {
+            return null;
+        }
+        int[] ids = new int[counts.size()];
+        int[] values = new int[counts.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+            ids[i] = entry.getKey();
+            values[i] = entry.getValue();
+            i++;
+        }
+        return new Doc(ids, values);
+    }
+
+    void update(List<Doc> batch, long corpusSize, AnalysisComputePool pool) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (updates == 0) {
+            seed(batch);
+        }
+        double[][] expElogbeta = expElogbeta(batch);
+        int parts = Math.max(1, Math.min(pool.parallelism(), batch.size() / 64));
+        List<int[]> slices = new ArrayList<>(parts);
+        for (int p = 0; p < parts; p++) {
+            slices.add(new int[]{(int) ((long) batch.size() * p / parts), (int) ((long) batch.size() * (p + 1) / parts)});
+        }
+        List<double[][]> partials = pool.map(slices, slice -> {
+            double[][] sstats = new double[topicCount][terms.size()];
+            for (int d = slice[0]; d < slice[1]; d++) {
+                eStep(batch.get(d), expElogbeta, sstats);
+            }
+            return sstats;
+        });
+
+        double rho = Math.pow(TAU0 + updates, -KAPPA);
+        double scale = (double) Math.max(corpusSize, batch.size()) / batch.size();
+        int v = terms.size();
+        for (int k = 0; k < topicCount; k++) {
+            double[] row = lambda[k];
+            double sum = 0.0;
+            for (int w = 0; w < v; w++) {
+                double s = 0.0;
+                for (double[][] partial : partials) {
+                    s += partial[k][w];
+                }
+                s *= expElogbeta[k][w];
+                row[w] = (1.0 - rho) * row[w] + rho * (ETA + scale * s);
+                sum += row[w];
+            }
+            lambdaSum[k] = sum;
+        }
+        updates++;
+        docsSeen += batch.size();
+    }
+
+    double[][] expElogbeta() {
+        return expElogbeta(null);
+    }
+
+    double[] infer(Doc doc, double[][] expElogbeta) {
+        double[] gamma = eStep(doc, expElogbeta, null);
+        double sum = 0.0;
+        for (double g : gamma) {
+            sum += g;
+        }
+        for (int k = 0; k < topicCount; k++) {
+            gamma[k] /= sum;
+        }
+        return gamma;
+    }
+
+    List<String> topWords(int topic, int limit) {
+        int v = terms.size();
+        double total = 0.0;
+        for (int k = 0; k < topicCount; k++) {
+            total += lambdaSum[k];
+        }
+        double[] relevance = new double[v];
+        Integer[] order = new Integer[v];
+        for (int w = 0; w < v; w++) {
+            double marginal = 0.0;
+            for (int k = 0; k < topicCount; k++) {
+                marginal += lambda[k][w];
+            }
+            double p = lambda[topic][w] / lambdaSum[topic];
+            relevance[w] = RELEVANCE_LAMBDA * Math.log(p) + (1.0 - RELEVANCE_LAMBDA) * Math.log(p / (marginal / total));
+            order[w] = w;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int c = Double.compare(relevance[b], relevance[a]);
+            return c != 0 ? c : terms.get(a).compareTo(terms.get(b));
+        });
+        List<String> words = new ArrayList<>(Math.min(limit, v));
+        for (int i = 0; i < v && words.size() < limit; i++) {
+            words.add(terms.get(order[i]));
+        }
+        return words;
+    }
+
+    byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(topicCount);
+            out.writeInt(maxTerms);
+            out.writeLong(updates);
+            out.writeLong(docsSeen);
+            out.writeInt(terms.size());
+            for (String term : terms) {
+                out.writeUTF(term);
+            }
+            for (int k = 0; k < topicCount; k++) {
+                for (int w = 0; w < terms.size(); w++) {
+                    out.writeFloat((float) lambda[k][w]);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("failed to serialize topic model", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static OnlineLda fromBytes(byte[] data, int topicCount, int maxTerms) {
+        if (data == null) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION || in.readInt() != topicCount) {
+                return null;
+            }
+            in.readInt();
+            OnlineLda model = new OnlineLda(topicCount, maxTerms);
+            model.updates = in.readLong();
+            model.docsSeen = in.readLong();
+            int termCount = in.readInt();
+            for (int w = 0; w < termCount; w++) {
+                String term = in.readUTF();
+                model.termIds.put(term, w);
+                model.terms.add(term);
+            }
+            model.lambda = new double[topicCount][Math.max(64, termCount)];
+            for (int k = 0; k < topicCount; k++) {
+                double sum = 0.0;
+                for (int w = 0; w < termCount; w++) {
+                    model.lambda[k][w] = in.readFloat();
+                    sum += model.lambda[k][w];
+                }
+                model.lambdaSum[k] = sum;
+            }
+            return model;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private int localId(int globalId, boolean grow, TermDictionary dictionary) {
+        if (globalId < localIds.length && localIds[globalId] > 0) {
+            return localIds[globalId] - 1;
+        }
+        String term = dictionary.term(globalId);
+        if (term == null) {
+            return -1;
+        }
+        Integer id = termIds.get(term);
+        if (id == null) {
+            if (!grow || terms.size() >= maxTerms) {
+                return -1;
+            }
+            id = addTerm(term);
+        }
+        if (globalId >= localIds.length) {
+            localIds = Arrays.copyOf(localIds, Math.max(globalId + 1, localIds.length * 2));
+        }
+        localIds[globalId] = id + 1;
+        return id;
+    }
+
+    private int addTerm(String token) {
+        int id = terms.size();
+        terms.add(token);
+        termIds.put(token, id);
+        if (id >= lambda[0].length) {
+            for (int k = 0; k < topicCount; k++) {
+                lambda[k] = Arrays.copyOf(lambda[k], lambda[k].length * 2);
+            }
+        }
+        Random random = new Random(SEED * 31 + id);
+        for (int k = 0; k < topicCount; k++) {
+            double init = Math.max(0.01, 1.0 + 0.1 * random.nextGaussian());
+            lambda[k][id] = init;
+            lambdaSum[k] += init;
+        }
+        return id;
+    }
+
+    private void seed(List<Doc> batch) {
+        int k = Math.min(topicCount, batch.size());
+        int[] best = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int restart = 0; restart < SEED_RESTARTS; restart++) {
+            int[] assign = new int[batch.size()];
+            double score = seedAssign(batch, k, new Random(SEED + restart), assign);
+            if (score > bestScore) {
+                bestScore = score;
+                best = assign;
+            }
+        }
+
+        for (int d = 0; d < batch.size(); d++) {
+            Doc doc = batch.get(d);
+            double[] row = lambda[best[d]];
+            for (int i = 0; i < doc.termIds().length; i++) {
+                row[doc.termIds()[i]] += doc.counts()[i];
+                lambdaSum[best[d]] += doc.counts()[i];
+            }
+        }
+    }
+
+    private double seedAssign(List<Doc> batch, int k, Random random, int[] assign) {
+        int v = terms.size();
+        int n = batch.size();
+        double[][] centroids = new double[k][];
+        double[] minDist = new double[n];
+        Arrays.fill(minDist, Double.POSITIVE_INFINITY);
+        int next = random.nextInt(n);
+        for (int s = 0; s < k; s++) {
+            centroids[s] = new double[v];
+            addUnit(batch.get(next), centroids[s]);
+            double total = 0.0;
+            for (int d = 0; d < n; d++) {
+                double dist = Math.max(0.0, 1.0 - similarity(batch.get(d), centroids[s]));
+                minDist[d] = Math.min(minDist[d], dist * dist);
+                total += minDist[d];
+            }
+            double target = random.nextDouble() * total;
+            next = n - 1;
+            for (int d = 0; d < n; d++) {
+                target -= minDist[d];
+                if (target <= 0.0) {
+                    next = d;
+                    break;
+                }
+            }
+        }
+
+        double score = 0.0;
+        for (int iter = 0; iter < SEED_ITER; iter++) {
+            score = 0.0;
+            for (int d = 0; d < n; d++) {
+                int best = 0;
+                double bestSim = Double.NEGATIVE_INFINITY;
+                for (int s = 0; s < k; s++) {
+                    double sim = similarity(batch.get(d), centroids[s]);
+                    if (sim > bestSim) {
+                        bestSim = sim;
+                        best = s;
+                    }
+                }
+                assign[d] = best;
+                score += bestSim;
+            }
+            double[][] sums = new double[k][v];
+            for (int d = 0; d < n; d++) {
+                addUnit(batch.get(d), sums[assign[d]]);
+            }
+            for (int s = 0; s < k; s++) {
+                double norm = 0.0;
+                for (double x : sums[s]) {
+                    norm += x * x;
+                }
+                if (norm > 0.0) {
+                    norm = Math.sqrt(norm);
+                    for (int w = 0; w < v; w++) {
+                        sums[s][w] /= norm;
+                    }
+                    centroids[s] = sums[s];
+                }
+            }
+        }
+        return score;
+    }
+
+    private static void addUnit(Doc doc, double[] dense) {
+        double norm = 0.0;
+        for (int c : doc.counts()) {
+            norm += (double) c * c;
+        }
+        norm = Math.sqrt(norm);
+        for (int i = 0; i < doc.termIds().length; i++) {
+            dense[doc.termIds()[i]] += doc.counts()[i] / norm;
+        }
+    }
+
+    private static double similarity(Doc doc, double[] centroid) {
+        double dot = 0.0;
+        double norm = 0.0;
+        for (int i = 0; i < doc.termIds().length; i++) {
+            dot += doc.counts()[i] * centroid[doc.termIds()[i]];
+            norm += (double) doc.counts()[i] * doc.counts()[i];
+        }
+        return norm == 0.0 ? 0.0 : dot / Math.sqrt(norm);
+    }
+
+    private double[][] expElogbeta(List<Doc> batch) {
+        int v = terms.size();
+        double[][] out = new double[topicCount][v];
+        boolean[] used = null;
+        if (batch != null) {
+            used = new boolean[v];
+            for (Doc doc : batch) {
+                for (int id : doc.termIds()) {
+                    used[id] = true;
+                }
+            }
+        }
+        for (int k = 0; k < topicCount; k++) {
+            double psiSum = digamma(lambdaSum[k]);
+            for (int w = 0; w < v; w++) {
+                if (used == null || used[w]) {
+                    out[k][w] = Math.exp(digamma(lambda[k][w]) - psiSum);
+                }
+            }
+        }
+        return out;
+    }
+
+    private double[] eStep(Doc doc, double[][] expElogbeta, double[][] sstats) {
+        int[] ids = doc.termIds();
+        int[] counts = doc.counts();
+        int n = ids.length;
+        double[] gamma = new double[topicCount];
+        Arrays.fill(gamma, 1.0);
+        double[] expElogtheta = new double[topicCount];
+        double[] phinorm = new double[n];
+
+        for (int iter = 0; iter < MAX_E_STEP_ITER; iter++) {
+            expElogtheta(gamma, expElogtheta);
+            normalizer(ids, expElogtheta, expElogbeta, phinorm);
+            double change = 0.0;
+            for (int k = 0; k < topicCount; k++) {
+                double[] beta = expElogbeta[k];
+                double s = 0.0;
+                for (int i = 0; i < n; i++) {
+                    s += counts[i] / phinorm[i] * beta[ids[i]];
+                }
+                double next = alpha + expElogtheta[k] * s;
+                change += Math.abs(next - gamma[k]);
+                gamma[k] = next;
+            }
+            if (change / topicCount < E_STEP_TOLERANCE) {
+                break;
+            }
+        }
+
+        if (sstats != null) {
+            expElogtheta(gamma, expElogtheta);
+            normalizer(ids, expElogtheta, expElogbeta, phinorm);
+            for (int k = 0; k < topicCount; k++) {
+                double[] row = sstats[k];
+                for (int i = 0; i < n; i++) {
+                    row[ids[i]] += expElogtheta[k] * counts[i] / phinorm[i];
+                }
+            }
+        }
+        return gamma;
+    }
+
+    private void expElogtheta(double[] gamma, double[] out) {
+        double sum = 0.0;
+        for (double g : gamma) {
+            sum += g;
+        }
+        double psiSum = digamma(sum);
+        for (int k = 0; k < topicCount; k++) {
+            out[k] = Math.exp(digamma(gamma[k]) - psiSum);
+        }
+    }
+
+    private void normalizer(int[] ids, double[] expElogtheta, double[][] expElogbeta, double[] out) {
+        for (int i = 0; i < ids.length; i++) {
+            double s = 1e-100;
+            for (int k = 0; k < topicCount; k++) {
+                s += expElogtheta[k] * expElogbeta[k][ids[i]];
+            }
+            out[i] = s;
+        }
+    }
+
+    static double digamma(double x) {
+        double result = 0.0;
+        while (x < 6.0) {
+            result -= 1.0 / x;
+            x += 1.0;
+        }
+        double f = 1.0 / (x * x);
+        return result + Math.log(x) - 0.5 / x
+                - f * (1.0 / 12 - f * (1.0 / 120 - f * (1.0 / 252 - f * (1.0 / 240 - f / 132))));
+    }
+
+    record Doc(int[] termIds, int[] counts) {}
+}
@@ -0,0 +1,167 @@
+package com.wh.reputation.analysis;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+final class PostingList {
+    private static final long[] NO_IDS = new long[0];
+    private static final int PENDING_LIMIT = 256;
+
+    private byte[] data;
+    private int length;
+    private int count;
+    private long lastId;
+    private long[] pending = NO_IDS;
+    private int pendingCount;
+
+    PostingList() {
+        this.data = new byte[8];
+    }
+
+    private PostingList(byte[] data, int count, long lastId) {
+        this.data = data;
+        this.length = data.length;
+        this.count = count;
+        this.lastId = lastId;
+    }
+
+    void add(long id) {
+        if (count == 0 || id > lastId) {
+            writeVarLong(id - lastId);
+            lastId = id;
+            count++;
+            return;
+        }
+        if (id == lastId) {
+            return;
+        }
+        if (pendingCount == pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(16, pending.length * 2));
+        }
+        pending[pendingCount++] = id;
+        if (pendingCount >= PENDING_LIMIT) {
+            compact();
+        }
+    }
+
+    int size() {
+        compact();
+        return count;
+    }
+
+    long[] toArray() {
+        compact();
+        return decode();
+    }
+
+    void write(DataOutput out) throws IOException {
+        compact();
+        out.writeInt(count);
+        out.writeLong(lastId);
+        out.writeInt(length);
+        out.write(data, 0, length);
+    }
+
+    static PostingList read(DataInput in) throws IOException {
+        int count = in.readInt();
+        long lastId = in.readLong();
+        int length = in.readInt();
+        if (count < 0 || length < 0) {
+            throw new IOException("corrupt posting list");
+        }
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return new PostingList(data, count, lastId);
+    }
+
+    private void compact() {
+        if (pendingCount == 0) {
+            return;
+        }
+        long[] extra = Arrays.copyOf(pending, pendingCount);
+        Arrays.sort(extra);
+        long[] merged = union(decode(), extra);
+        pending = NO_IDS;
+        pendingCount = 0;
+
+        data = new byte[Math.max(8, merged.length * 2)];
+        length = 0;
+        count = 0;
+        lastId = 0;
+        for (long id : merged) {
+            writeVarLong(id - lastId);
+            lastId = id;
+            count++;
+        }
+    }
+
+    private long[] decode() {
+        long[] ids = new long[count];
+        long current = 0;
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            long gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                gap |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            current += gap;
+            ids[i] = current;
+        }
+        return ids;
+    }
+
+    private void writeVarLong(long value) {
+        if (length + 10 > data.length) {
+            data = Arrays.copyOf(data, Math.max(length + 10, data.length * 2));
+        }
+        while ((value & ~0x7FL) != 0) {
+            data[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[length++] = (byte) value;
+    }
+
+    static long[] union(long[] a, long[] b) {
+        long[] out = new long[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length || j < b.length) {
+            long next;
+            if (j >= b.length || (i < a.length && a[i] <= b[j])) {
+                next = a[i++];
+            } else {
+                next = b[j++];
+            }
+            if (n == 0 || out[n - 1] != next) {
+                out[n++] = next;
+            }
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    static long[] intersect(long[] a, long[] b) {
+        long[] out = new long[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                out[n++] = a[i];
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+}
@@ -0,0 +1,157 @@
+package com.wh.reputation.analysis;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component
+public class RecomputeScheduler {
+    private static final Logger log = LoggerFactory.getLogger(RecomputeScheduler.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReviewAnalysisService reviewAnalysisService;
+    private final long windowMs;
+    private final ExecutorService workers;
+    private final Set<RecomputeKey> running = ConcurrentHashMap.newKeySet();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong saved = new AtomicLong();
+
+    public RecomputeScheduler(
+            JdbcTemplate jdbcTemplate,
+            ReviewAnalysisService reviewAnalysisService,
+            @Value("${reputation.analysis.recompute-window-ms:30000}") long windowMs,
+            @Value("${reputation.analysis.recompute-workers:2}") int workerCount
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.reviewAnalysisService = reviewAnalysisService;
+        this.windowMs = Math.max(0L, windowMs);
+
+        AtomicInteger threadSeq = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workerCount), r -> {
+            Thread t = new Thread(r, "analysis-recompute-" + threadSeq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void markDirty(Long productId, LocalDate start, LocalDate end) {
+        Objects.requireNonNull(productId, "productId");
+        requested.incrementAndGet();
+        jdbcTemplate.update("""
+                        insert into pending_recompute (product_id, range_key, start_date, end_date, requests, requested_at)
+                        values (?, ?, ?, ?, 1, ?)
+                        on duplicate key update requests = requests + 1
+                        """,
+                productId,
+                LatestResultStore.rangeKey(start, end),
+                toSqlDate(start),
+                toSqlDate(end),
+                Timestamp.valueOf(LocalDateTime.now())
+        );
+    }
+
+    @Scheduled(fixedDelayString = "${reputation.analysis.recompute-tick-ms:1000}")
+    public void flushDue() {
+        Timestamp dueBefore = Timestamp.valueOf(LocalDateTime.now().minusNanos(windowMs * 1_000_000L));
+        List<DueKey> due = jdbcTemplate.query("""
+                        select p.product_id as productId,
+                               p.start_date as startDate,
+                               p.end_date as endDate,
+                               p.requests as requests
+                        from pending_recompute p
+                        where p.requested_at <= ?
+                        order by p.requested_at asc
+                        """,
+                (rs, rowNum) -> {
+                    Date startDate = rs.getDate("startDate");
+                    Date endDate = rs.getDate("endDate");
+                    return new DueKey(
+                            new RecomputeKey(
+                                    rs.getLong("productId"),
+                                    startDate == null ? null : startDate.toLocalDate(),
+                                    endDate == null ? null : endDate.toLocalDate()
+                            ),
+                            rs.getInt("requests")
+                    );
+                },
+                dueBefore
+        );
+
+        for (DueKey item : due) {
+            if (!running.add(item.key())) {
+                continue;
+            }
+            try {
+                workers.execute(() -> run(item));
+            } catch (RejectedExecutionException e) {
+                running.remove(item.key());
+                log.warn("recompute for product {} rejected, it stays pending", item.key().productId());
+            }
+        }
+    }
+
+    public RecomputeStatsDto stats() {
+        long requestedCount = requested.get();
+        long executedCount = executed.get();
+        long failedCount = failed.get();
+        Long pendingRows = jdbcTemplate.queryForObject("select count(*) from pending_recompute", Long.class);
+        int pending = pendingRows == null ? 0 : (int) Math.min(Integer.MAX_VALUE, pendingRows);
+        return new RecomputeStatsDto(requestedCount, executedCount, saved.get(), failedCount, pending, windowMs);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    private void run(DueKey item) {
+        RecomputeKey key = item.key();
+        try {
+            reviewAnalysisService.recompute(key.productId(), key.start(), key.end());
+            executed.incrementAndGet();
+            saved.addAndGet(Math.max(0, item.requests() - 1));
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            log.error("recompute failed for product {} ({} ~ {})", key.productId(), key.start(), key.end(), e);
+        } finally {
+            try {
+                jdbcTemplate.update(
+                        "delete from pending_recompute where product_id = ? and range_key = ? and requests = ?",
+                        key.productId(),
+                        LatestResultStore.rangeKey(key.start(), key.end()),
+                        item.requests()
+                );
+            } finally {
+                running.remove(key);
+            }
+        }
+    }
+
+    private static Date toSqlDate(LocalDate value) {
+        return value == null ? null : Date.valueOf(value);
+    }
+
+    private record RecomputeKey(Long productId, LocalDate start, LocalDate end) {}
+
+    private record DueKey(RecomputeKey key, int requests) {}
+}
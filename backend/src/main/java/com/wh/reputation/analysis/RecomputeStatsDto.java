@@ -0,0 +1,10 @@
+package com.wh.reputation.analysis;
+
+public record RecomputeStatsDto(
+        long requested,
+        long executed,
+        long saved,
+        long failed,
+        int pending,
+        long windowMs
+) {}
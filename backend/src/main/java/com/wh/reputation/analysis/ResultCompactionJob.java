@@ -0,0 +1,141 @@
+package com.wh.reputation.analysis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.List;
+
+@Component
+public class ResultCompactionJob {
+    private static final Logger log = LoggerFactory.getLogger(ResultCompactionJob.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int keepRuns;
+
+    public ResultCompactionJob(
+            JdbcTemplate jdbcTemplate,
+            @Value("${reputation.retention.keep-runs:3}") int keepRuns
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.keepRuns = Math.max(1, keepRuns);
+    }
+
+    @Scheduled(
+            initialDelayString = "${reputation.retention.compaction-ms:600000}",
+            fixedDelayString = "${reputation.retention.compaction-ms:600000}"
+    )
+    public void compact() {
+        int topicRanges = 0;
+        int clusterRanges = 0;
+        try {
+            for (RunRange range : overRetained("""
+                    select tr.product_id as productId, tr.start_date as startDate, tr.end_date as endDate
+                    from topic_result tr
+                    group by tr.product_id, tr.start_date, tr.end_date
+                    having count(*) > ?
+                    """)) {
+                pruneTopicRuns(range);
+                topicRanges++;
+            }
+            for (RunRange range : overRetained("""
+                    select c.product_id as productId, c.start_date as startDate, c.end_date as endDate
+                    from `cluster` c
+                    where c.size > 0
+                    group by c.product_id, c.start_date, c.end_date
+                    having count(distinct c.created_at) > ?
+                    """)) {
+                pruneClusterRuns(range);
+                clusterRanges++;
+            }
+        } catch (Exception e) {
+            log.error("result compaction failed", e);
+            return;
+        }
+        if (topicRanges > 0 || clusterRanges > 0) {
+            log.info("result compaction pruned {} topic ranges and {} cluster ranges (keep {} runs)", topicRanges, clusterRanges, keepRuns);
+        }
+    }
+
+    private List<RunRange> overRetained(String sql) {
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new RunRange(
+                rs.getLong("productId"),
+                rs.getDate("startDate"),
+                rs.getDate("endDate")
+        ), keepRuns);
+    }
+
+    private void pruneTopicRuns(RunRange range) {
+        List<Long> kept = jdbcTemplate.queryForList("""
+                        select tr.id
+                        from topic_result tr
+                        where tr.product_id = ?
+                          and tr.start_date <=> ?
+                          and tr.end_date <=> ?
+                        order by tr.id desc
+                        limit ?
+                        """,
+                Long.class,
+                range.productId(), range.start(), range.end(), keepRuns
+        );
+        if (kept.size() < keepRuns) {
+            return;
+        }
+        Long oldestKept = kept.get(kept.size() - 1);
+        jdbcTemplate.update("""
+                        delete from topic_result
+                        where product_id = ?
+                          and start_date <=> ?
+                          and end_date <=> ?
+                          and id < ?
+                        """,
+                range.productId(), range.start(), range.end(), oldestKept
+        );
+    }
+
+    private void pruneClusterRuns(RunRange range) {
+        List<Timestamp> kept = jdbcTemplate.queryForList("""
+                        select distinct c.created_at
+                        from `cluster` c
+                        where c.product_id = ?
+                          and c.start_date <=> ?
+                          and c.end_date <=> ?
+                          and c.size > 0
+                        order by c.created_at desc
+                        limit ?
+                        """,
+                Timestamp.class,
+                range.productId(), range.start(), range.end(), keepRuns
+        );
+        if (kept.size() < keepRuns) {
+            return;
+        }
+        Timestamp oldestKept = kept.get(kept.size() - 1);
+        jdbcTemplate.update("""
+                        delete rc from review_cluster rc
+                        join `cluster` c on c.id = rc.cluster_id
+                        where c.product_id = ?
+                          and c.start_date <=> ?
+                          and c.end_date <=> ?
+                          and c.created_at < ?
+                        """,
+                range.productId(), range.start(), range.end(), oldestKept
+        );
+        jdbcTemplate.update("""
+                        delete from `cluster`
+                        where product_id = ?
+                          and start_date <=> ?
+                          and end_date <=> ?
+                          and created_at < ?
+                        """,
+                range.productId(), range.start(), range.end(), oldestKept
+        );
+    }
+
+    private record RunRange(long productId, Date start, Date end) {}
+}
@@ -1,36 +1,41 @@
 package com.wh.reputation.analysis;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.wh.reputation.persistence.AspectEntity;
-import com.wh.reputation.persistence.AspectRepository;
-import com.wh.reputation.persistence.ReviewAspectResultEntity;
-import com.wh.reputation.persistence.ReviewAspectResultRepository;
-import com.wh.reputation.persistence.ReviewEntity;
-import com.wh.reputation.persistence.ReviewRepository;
 import com.wh.reputation.alert.AlertService;
 import com.wh.reputation.decision.SuggestionService;
-import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
 @Service
 public class ReviewAnalysisService {
-    private final ReviewRepository reviewRepository;
-    private final AspectRepository aspectRepository;
-    private final ReviewAspectResultRepository reviewAspectResultRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final AspectMatcherProvider aspectMatcherProvider;
+    private final AnalysisDictionaries dictionaries;
     private final SentimentAnalyzer sentimentAnalyzer;
     private final TokenizationService tokenizationService;
+    private final TermDictionary termDictionary;
+    private final AnalysisComputePool computePool;
+    private final KeywordAnalysisService keywordAnalysisService;
+    private final SentimentRollupService sentimentRollupService;
+    private final ReviewSearchIndex reviewSearchIndex;
+    private final ClusterTermCache clusterTermCache;
     private final TopicAnalysisService topicAnalysisService;
     private final ClusterAnalysisService clusterAnalysisService;
     private final AlertService alertService;
@@ -38,22 +43,34 @@ public class ReviewAnalysisService {
     private final ObjectMapper objectMapper;
 
     public ReviewAnalysisService(
-            ReviewRepository reviewRepository,
-            AspectRepository aspectRepository,
-            ReviewAspectResultRepository reviewAspectResultRepository,
+            JdbcTemplate jdbcTemplate,
+            AspectMatcherProvider aspectMatcherProvider,
+            AnalysisDictionaries dictionaries,
             SentimentAnalyzer sentimentAnalyzer,
             TokenizationService tokenizationService,
+            TermDictionary termDictionary,
+            AnalysisComputePool computePool,
+            KeywordAnalysisService keywordAnalysisService,
+            SentimentRollupService sentimentRollupService,
+            ReviewSearchIndex reviewSearchIndex,
+            ClusterTermCache clusterTermCache,
             TopicAnalysisService topicAnalysisService,
             ClusterAnalysisService clusterAnalysisService,
             AlertService alertService,
             SuggestionService suggestionService,
             ObjectMapper objectMapper
     ) {
-        this.reviewRepository = reviewRepository;
-        this.aspectRepository = aspectRepository;
-        this.reviewAspectResultRepository = reviewAspectResultRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.aspectMatcherProvider = aspectMatcherProvider;
+        this.dictionaries = dictionaries;
         this.sentimentAnalyzer = sentimentAnalyzer;
         this.tokenizationService = tokenizationService;
+        this.termDictionary = termDictionary;
+        this.computePool = computePool;
+        this.keywordAnalysisService = keywordAnalysisService;
+        this.sentimentRollupService = sentimentRollupService;
+        this.reviewSearchIndex = reviewSearchIndex;
+        this.clusterTermCache = clusterTermCache;
         this.topicAnalysisService = topicAnalysisService;
         this.clusterAnalysisService = clusterAnalysisService;
         this.alertService = alertService;
@@ -62,152 +79,175 @@ public class ReviewAnalysisService {
     }
 
     @Transactional
-    public void analyzeReviewIds(Collection<Long> reviewIds) {
+    public Set<Long> analyzeReviewIds(Collection<Long> reviewIds) {
         if (reviewIds == null || reviewIds.isEmpty()) {
-            return;
+            return Set.of();
         }
 
-        List<ReviewEntity> reviews = reviewRepository.findAllById(reviewIds);
+        List<ReviewRow> reviews = loadReviews(List.copyOf(new LinkedHashSet<>(reviewIds)));
         if (reviews.isEmpty()) {
-            return;
+            return Set.of();
         }
 
         analyzeReviews(reviews);
-        reviewRepository.flush();
 
         Set<Long> productIds = new LinkedHashSet<>();
-        for (ReviewEntity review : reviews) {
-            if (review.getProduct() != null && review.getProduct().getId() != null) {
-                productIds.add(review.getProduct().getId());
-            }
-        }
-        for (Long productId : productIds) {
-            topicAnalysisService.recompute(productId, null, null);
-            clusterAnalysisService.recompute(productId, null, null);
-            alertService.recompute(productId, null, null);
-            suggestionService.recompute(productId, null, null);
+        for (ReviewRow review : reviews) {
+            productIds.add(review.productId());
         }
+        return productIds;
     }
 
     @Transactional
-    public void analyzeByProduct(Long productId, LocalDate start, LocalDate end) {
+    public void recompute(Long productId, LocalDate start, LocalDate end) {
         Objects.requireNonNull(productId, "productId");
 
-        LocalDateTime startTime = start == null ? null : start.atStartOfDay();
-        LocalDateTime endExclusive = end == null ? null : end.plusDays(1).atStartOfDay();
-        List<Long> reviewIds = reviewRepository.findIdsForAnalysis(productId, startTime, endExclusive);
-        if (reviewIds.isEmpty()) {
-            return;
-        }
-
-        List<ReviewEntity> reviews = reviewRepository.findAllById(reviewIds);
-        if (reviews.isEmpty()) {
-            return;
-        }
-
-        analyzeReviews(reviews);
-        reviewRepository.flush();
-
         topicAnalysisService.recompute(productId, start, end);
         clusterAnalysisService.recompute(productId, start, end);
         alertService.recompute(productId, start, end);
         suggestionService.recompute(productId, start, end);
     }
 
-    private void analyzeReviews(List<ReviewEntity> reviews) {
-        List<AspectEntity> aspects = aspectRepository.findAll(Sort.by(Sort.Direction.ASC, "id"));
-        LocalDateTime now = LocalDateTime.now();
-
-        List<Long> reviewIds = reviews.stream().map(ReviewEntity::getId).toList();
-        reviewAspectResultRepository.deleteByReviewIdIn(reviewIds);
-
-        List<ReviewAspectResultEntity> resultsToSave = new ArrayList<>();
-        for (ReviewEntity review : reviews) {
-            String content = review.getContentClean();
-            SentimentResult sentiment = sentimentAnalyzer.analyze(content);
-            review.setOverallSentimentLabel(sentiment.label());
-            review.setOverallSentimentScore(sentiment.score());
-            review.setTokensJson(toJson(tokenizationService.tokenize(content)));
-
-            for (AspectEntity aspect : aspects) {
-                AspectMatch match = matchAspect(content, aspect.getKeywordsJson());
-                if (match.hitKeywords().isEmpty()) {
-                    continue;
-                }
-
-                String hitKeywordsJson = toJson(match.hitKeywords());
-                resultsToSave.add(new ReviewAspectResultEntity(
-                        review,
-                        aspect,
-                        hitKeywordsJson,
-                        sentiment.label(),
-                        sentiment.score(),
-                        match.confidence(),
-                        now
-                ));
-            }
-        }
-
-        reviewAspectResultRepository.saveAll(resultsToSave);
+    private List<ReviewRow> loadReviews(List<Long> reviewIds) {
+        String placeholders = String.join(",", Collections.nCopies(reviewIds.size(), "?"));
+        return jdbcTemplate.query("""
+                        select r.id as id,
+                               r.product_id as productId,
+                               r.content_clean as contentClean,
+                               r.tokens_json is not null as indexed
+                        from review r
+                        where r.id in (%s)
+                        order by r.id asc
+                        """.formatted(placeholders),
+                (rs, rowNum) -> new ReviewRow(
+                        rs.getLong("id"),
+                        rs.getLong("productId"),
+                        rs.getString("contentClean"),
+                        rs.getBoolean("indexed")
+                ),
+                reviewIds.toArray()
+        );
     }
 
-    private AspectMatch matchAspect(String content, String keywordsJson) {
-        if (content == null || content.isBlank() || keywordsJson == null || keywordsJson.isBlank()) {
-            return new AspectMatch(List.of(), 0.0);
-        }
+    private void analyzeReviews(List<ReviewRow> reviews) {
+        AspectMatcher aspectMatcher = aspectMatcherProvider.current();
+        AnalysisDictionaries.Snapshot dictionarySnapshot = dictionaries.current();
+        KeywordExtractor keywordExtractor = keywordAnalysisService.keywordExtractor(dictionarySnapshot);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS));
 
-        JsonNode node;
-        try {
-            node = objectMapper.readTree(keywordsJson);
-        } catch (JsonProcessingException e) {
-            throw new IllegalStateException("invalid aspect.keywords_json: " + keywordsJson, e);
-        }
-        if (node == null || !node.isArray()) {
-            return new AspectMatch(List.of(), 0.0);
+        Set<Long> reindexed = new HashSet<>();
+        for (ReviewRow review : reviews) {
+            if (review.indexed()) {
+                reindexed.add(review.id());
+            }
         }
+        List<ReviewOutcome> outcomes = computePool.map(reviews, review -> analyzeOne(review, dictionarySnapshot, aspectMatcher, keywordExtractor));
 
-        LinkedHashSet<String> hitKeywords = new LinkedHashSet<>();
-        double sumWeight = 0.0;
-        for (JsonNode item : node) {
-            KeywordDef def = parseKeywordDef(item);
-            if (def == null) {
-                continue;
-            }
-            if (!content.contains(def.keyword())) {
-                continue;
-            }
-            if (hitKeywords.add(def.keyword())) {
-                sumWeight += def.weight();
+        Set<String> terms = new HashSet<>();
+        for (ReviewOutcome outcome : outcomes) {
+            int[] pairs = outcome.keywordCounts();
+            for (int i = 0; i < pairs.length; i += 2) {
+                terms.add(keywordExtractor.term(pairs[i]));
             }
+            terms.addAll(outcome.tokens());
         }
+        termDictionary.resolve(terms);
 
-        double confidence = Math.min(1.0, sumWeight / 5.0);
-        return new AspectMatch(new ArrayList<>(hitKeywords), confidence);
-    }
-
-    private KeywordDef parseKeywordDef(JsonNode item) {
-        if (item == null || item.isNull()) {
-            return null;
-        }
-        if (item.isTextual()) {
-            String keyword = item.asText();
-            if (keyword == null || keyword.isBlank()) {
-                return null;
+        List<Object[]> reviewArgs = new ArrayList<>(outcomes.size());
+        List<Object[]> aspectArgs = new ArrayList<>();
+        List<Object[]> keywordArgs = new ArrayList<>();
+        List<ReviewSearchIndex.IndexedReview> indexed = new ArrayList<>(outcomes.size());
+        Map<Long, List<Long>> reviewIdsByProduct = new HashMap<>();
+        for (ReviewOutcome outcome : outcomes) {
+            SentimentResult sentiment = outcome.sentiment();
+            int[] termIds = termDictionary.encode(outcome.tokens());
+            reviewArgs.add(new Object[]{
+                    sentiment.label(),
+                    sentiment.score(),
+                    toJson(outcome.tokens()),
+                    TermDictionary.pack(termIds),
+                    now,
+                    keywordExtractor.signature(),
+                    outcome.reviewId()
+            });
+            indexed.add(new ReviewSearchIndex.IndexedReview(
+                    outcome.productId(), outcome.reviewId(), termIds, now.getTime(), reindexed.contains(outcome.reviewId())
+            ));
+            reviewIdsByProduct.computeIfAbsent(outcome.productId(), k -> new ArrayList<>()).add(outcome.reviewId());
+            for (AspectHit hit : outcome.aspectHits()) {
+                aspectArgs.add(new Object[]{
+                        outcome.reviewId(),
+                        hit.aspectId(),
+                        hit.hitKeywordsJson(),
+                        sentiment.label(),
+                        sentiment.score(),
+                        hit.confidence(),
+                        now
+                });
+            }
+            int[] pairs = outcome.keywordCounts();
+            for (int i = 0; i < pairs.length; i += 2) {
+                int keywordId = termDictionary.id(keywordExtractor.term(pairs[i]));
+                if (keywordId >= 0) {
+                    keywordArgs.add(new Object[]{outcome.reviewId(), keywordId, outcome.productId(), pairs[i + 1], sentiment.label()});
+                }
             }
-            return new KeywordDef(keyword, 1.0);
         }
-        if (!item.isObject()) {
-            return null;
+
+        List<Long> reviewIds = reviews.stream().map(ReviewRow::id).toList();
+        String placeholders = String.join(",", Collections.nCopies(reviewIds.size(), "?"));
+        jdbcTemplate.update(
+                "delete from review_aspect_result where review_id in (%s)".formatted(placeholders),
+                reviewIds.toArray()
+        );
+        jdbcTemplate.update(
+                "delete from review_keyword where review_id in (%s)".formatted(placeholders),
+                reviewIds.toArray()
+        );
+        jdbcTemplate.batchUpdate("""
+                        update review
+                        set overall_sentiment_label = ?, overall_sentiment_score = ?, tokens_json = ?, tokens_bin = ?, analyzed_at = ?, keyword_sig = ?
+                        where id = ?
+                        """,
+                reviewArgs
+        );
+        if (!aspectArgs.isEmpty()) {
+            jdbcTemplate.batchUpdate("""
+                            insert into review_aspect_result
+                              (review_id, aspect_id, hit_keywords_json, sentiment_label, sentiment_score, confidence, created_at)
+                            values (?, ?, ?, ?, ?, ?, ?)
+                            """,
+                    aspectArgs
+            );
         }
-        String keyword = item.path("keyword").asText(null);
-        if (keyword == null || keyword.isBlank()) {
-            return null;
+        if (!keywordArgs.isEmpty()) {
+            jdbcTemplate.batchUpdate("""
+                            insert into review_keyword (review_id, keyword_id, product_id, cnt, sentiment_label)
+                            values (?, ?, ?, ?, ?)
+                            """,
+                    keywordArgs
+            );
         }
-        double weight = item.hasNonNull("weight") ? item.get("weight").asDouble(1.0) : 1.0;
-        if (weight <= 0) {
-            weight = 1.0;
+        sentimentRollupService.refreshReviews(reviewIds);
+        reviewSearchIndex.indexAll(indexed);
+        clusterTermCache.evict(reviewIdsByProduct);
+    }
+
+    private ReviewOutcome analyzeOne(
+            ReviewRow review,
+            AnalysisDictionaries.Snapshot dictionarySnapshot,
+            AspectMatcher aspectMatcher,
+            KeywordExtractor keywordExtractor
+    ) {
+        String content = review.contentClean();
+        SentimentResult sentiment = sentimentAnalyzer.analyze(content, dictionarySnapshot);
+        List<String> tokens = tokenizationService.tokenize(content, dictionarySnapshot);
+
+        List<AspectHit> hits = new ArrayList<>();
+        for (AspectMatcher.AspectMatch match : aspectMatcher.match(content)) {
+            hits.add(new AspectHit(match.aspectId(), toJson(match.hitKeywords()), match.confidence()));
         }
-        return new KeywordDef(keyword, weight);
+        return new ReviewOutcome(review.id(), review.productId(), sentiment, tokens, hits, keywordExtractor.countHits(content));
     }
 
     private String toJson(Object value) {
@@ -218,7 +258,16 @@ public class ReviewAnalysisService {
         }
     }
 
-    private record KeywordDef(String keyword, double weight) {}
+    private record ReviewRow(long id, long productId, String contentClean, boolean indexed) {}
+
+    private record AspectHit(Long aspectId, String hitKeywordsJson, double confidence) {}
 
-    private record AspectMatch(List<String> hitKeywords, double confidence) {}
+    private record ReviewOutcome(
+            long reviewId,
+            long productId,
+            SentimentResult sentiment,
+            List<String> tokens,
+            List<AspectHit> aspectHits,
+            int[] keywordCounts
+    ) {}
 }
@@ -0,0 +1,344 @@
+package com.wh.reputation.analysis;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+public class ReviewSearchIndex {
+    private static final Logger log = LoggerFactory.getLogger(ReviewSearchIndex.class);
+    private static final int FILE_MAGIC = 0x52534958;
+    private static final int FILE_VERSION = 4;
+    private static final int STALE_REBUILD_MIN = 1000;
+    private static final TypeReference<List<String>> TOKEN_LIST = new TypeReference<>() {};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TokenizationService tokenizationService;
+    private final TermDictionary termDictionary;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final Path indexDir;
+    private final int maxCandidates;
+    private final Map<Long, ProductIndex> products = new ConcurrentHashMap<>();
+
+    public ReviewSearchIndex(
+            JdbcTemplate jdbcTemplate,
+            TokenizationService tokenizationService,
+            TermDictionary termDictionary,
+            ObjectMapper objectMapper,
+            @Value("${reputation.search.enabled:true}") boolean enabled,
+            @Value("${reputation.search.index-dir:data/search-index}") String indexDir,
+            @Value("${reputation.search.max-candidates:5000}") int maxCandidates
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.tokenizationService = tokenizationService;
+        this.termDictionary = termDictionary;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.indexDir = Paths.get(indexDir).toAbsolutePath();
+        this.maxCandidates = Math.max(1, maxCandidates);
+    }
+
+    public long[] candidates(Long productId, String keyword) {
+        if (!enabled || productId == null || keyword == null || keyword.isBlank()) {
+            return null;
+        }
+        List<String> queryTokens = List.copyOf(new LinkedHashSet<>(tokenizationService.tokenize(keyword.trim())));
+        if (queryTokens.isEmpty()) {
+            return null;
+        }
+
+        ProductIndex index = load(productId);
+        List<long[]> lists = new ArrayList<>(queryTokens.size());
+        synchronized (index) {
+            for (String token : queryTokens) {
+                long[] ids = index.lookupContaining(token, termDictionary);
+                if (ids == null) {
+                    return null;
+                }
+                lists.add(ids);
+            }
+        }
+
+        lists.sort(Comparator.comparingInt(ids -> ids.length));
+        long[] result = lists.get(0);
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = PostingList.intersect(result, lists.get(i));
+        }
+        return result.length > maxCandidates ? null : result;
+    }
+
+    void indexAll(List<IndexedReview> reviews) {
+        if (!enabled || reviews.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(reviews);
+                }
+            });
+        } else {
+            apply(reviews);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${reputation.search.flush-ms:60000}")
+    public void flushDirty() {
+        if (!enabled) {
+            return;
+        }
+        for (ProductIndex index : products.values()) {
+            synchronized (index) {
+                if (!index.dirty) {
+                    continue;
+                }
+                try {
+                    write(index);
+                    index.dirty = false;
+                } catch (IOException e) {
+                    log.warn("failed to persist search index for product {}", index.productId, e);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushDirty();
+    }
+
+    private void apply(List<IndexedReview> reviews) {
+        for (IndexedReview review : reviews) {
+            ProductIndex index = products.get(review.productId());
+            if (index == null) {
+                continue;
+            }
+            synchronized (index) {
+                if (index.ready) {
+                    index.add(review.reviewId(), review.termIds());
+                    index.analyzedUpTo = Math.max(index.analyzedUpTo, review.analyzedAt());
+                    if (review.reanalyzed() && ++index.stale > Math.max(STALE_REBUILD_MIN, index.docs.size() / 10)) {
+                        index.ready = false;
+                        index.rebuild = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private ProductIndex load(Long productId) {
+        ProductIndex index = products.computeIfAbsent(productId, ProductIndex::new);
+        synchronized (index) {
+            if (index.ready) {
+                return index;
+            }
+            Watermark watermark = jdbcTemplate.queryForObject("""
+                            select count(r.tokens_json) as analyzed,
+                                   max(r.analyzed_at) as analyzedUpTo
+                            from review r
+                            where r.product_id = ?
+                            """,
+                    (rs, rowNum) -> {
+                        Timestamp analyzedUpTo = rs.getTimestamp("analyzedUpTo");
+                        return new Watermark(rs.getLong("analyzed"), analyzedUpTo == null ? 0L : analyzedUpTo.getTime());
+                    },
+                    productId
+            );
+            if (index.rebuild || !read(index) || index.docs.size() != watermark.analyzed() || index.analyzedUpTo < watermark.analyzedUpTo()) {
+                rebuild(index);
+                index.analyzedUpTo = watermark.analyzedUpTo();
+            }
+            index.ready = true;
+            return index;
+        }
+    }
+
+    private void rebuild(ProductIndex index) {
+        index.clear();
+        Map<Long, List<String>> legacy = new HashMap<>();
+        jdbcTemplate.query("""
+                        select r.id as id,
+                               r.tokens_bin as tokensBin,
+                               case when r.tokens_bin is null then r.tokens_json end as tokensJson
+                        from review r
+                        where r.product_id = ?
+                          and r.tokens_json is not null
+                        order by r.id asc
+                        """,
+                rs -> {
+                    byte[] tokensBin = rs.getBytes("tokensBin");
+                    if (tokensBin != null) {
+                        index.add(rs.getLong("id"), TermDictionary.unpack(tokensBin));
+                    } else {
+                        legacy.put(rs.getLong("id"), parseTokens(rs.getString("tokensJson")));
+                    }
+                },
+                index.productId
+        );
+        for (Map.Entry<Long, List<String>> entry : legacy.entrySet()) {
+            index.add(entry.getKey(), termDictionary.encode(entry.getValue()));
+        }
+        index.dirty = true;
+        log.info("search index rebuilt for product {}: {} reviews, {} terms", index.productId, index.docs.size(), index.terms.size());
+    }
+
+    private List<String> parseTokens(String tokensJson) {
+        if (tokensJson == null || tokensJson.isBlank()) {
+            return List.of();
+        }
+        try {
+            List<String> tokens = objectMapper.readValue(tokensJson, TOKEN_LIST);
+            return tokens == null ? List.of() : tokens;
+        } catch (JsonProcessingException e) {
+            return List.of();
+        }
+    }
+
+    private boolean read(ProductIndex index) {
+        Path file = fileFor(index.productId);
+        if (!Files.exists(file)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION || in.readLong() != index.productId) {
+                return false;
+            }
+            index.clear();
+            index.analyzedUpTo = in.readLong();
+            index.stale = in.readInt();
+            index.docs = PostingList.read(in);
+            int termCount = in.readInt();
+            for (int i = 0; i < termCount; i++) {
+                int termId = in.readInt();
+                index.terms.put(termId, PostingList.read(in));
+            }
+            return true;
+        } catch (IOException e) {
+            log.warn("ignoring unreadable search index file {}", file, e);
+            index.clear();
+            return false;
+        }
+    }
+
+    private void write(ProductIndex index) throws IOException {
+        Files.createDirectories(indexDir);
+        Path file = fileFor(index.productId);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeLong(index.productId);
+            out.writeLong(index.analyzedUpTo);
+            out.writeInt(index.stale);
+            index.docs.write(out);
+            out.writeInt(index.terms.size());
+            for (Map.Entry<Integer, PostingList> entry : index.terms.entrySet()) {
+                out.writeInt(entry.getKey());
+                entry.getValue().write(out);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path fileFor(long productId) {
+        return indexDir.resolve("product-" + productId + ".idx");
+    }
+
+    record IndexedReview(long productId, long reviewId, int[] termIds, long analyzedAt, boolean reanalyzed) {}
+
+    private record Watermark(long analyzed, long analyzedUpTo) {}
+
+    private static final class ProductIndex {
+        private final long productId;
+        private Map<Integer, PostingList> terms = new HashMap<>();
+        private PostingList docs = new PostingList();
+        private long analyzedUpTo;
+        private int stale;
+        private boolean rebuild;
+        private boolean ready;
+        private boolean dirty;
+
+        private ProductIndex(Long productId) {
+            this.productId = productId;
+        }
+
+        private void clear() {
+            terms = new HashMap<>();
+            docs = new PostingList();
+            analyzedUpTo = 0L;
+            stale = 0;
+            rebuild = false;
+        }
+
+        private void add(long reviewId, int[] termIds) {
+            docs.add(reviewId);
+            for (int termId : termIds) {
+                terms.computeIfAbsent(termId, k -> new PostingList()).add(reviewId);
+            }
+            dirty = true;
+        }
+
+        private long[] lookupContaining(String token, TermDictionary dictionary) {
+            List<long[]> matched = new ArrayList<>();
+            int total = 0;
+            for (Map.Entry<Integer, PostingList> entry : terms.entrySet()) {
+                String term = dictionary.term(entry.getKey());
+                if (term != null && term.contains(token)) {
+                    long[] ids = entry.getValue().toArray();
+                    matched.add(ids);
+                    total += ids.length;
+                }
+            }
+            if (matched.isEmpty()) {
+                return null;
+            }
+            if (matched.size() == 1) {
+                return matched.get(0);
+            }
+            long[] all = new long[total];
+            int n = 0;
+            for (long[] ids : matched) {
+                System.arraycopy(ids, 0, all, n, ids.length);
+                n += ids.length;
+            }
+            Arrays.sort(all);
+            int unique = 0;
+            for (int i = 0; i < all.length; i++) {
+                if (unique == 0 || all[unique - 1] != all[i]) {
+                    all[unique++] = all[i];
+                }
+            }
+            return unique == all.length ? all : Arrays.copyOf(all, unique);
+        }
+    }
+}
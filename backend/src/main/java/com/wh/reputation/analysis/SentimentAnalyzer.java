@@ -3,35 +3,36 @@ package com.wh.reputation.analysis;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
 
 @Component
 public class SentimentAnalyzer {
-    private final SentimentLexicon lexicon;
+    private static final int NEGATION_WINDOW = 2;
 
-    public SentimentAnalyzer(SentimentLexicon lexicon) {
-        this.lexicon = lexicon;
+    private final AnalysisDictionaries dictionaries;
+    private final ThreadLocal<ScanState> scanState = ThreadLocal.withInitial(ScanState::new);
+
+    public SentimentAnalyzer(AnalysisDictionaries dictionaries) {
+        this.dictionaries = dictionaries;
     }
 
     public SentimentResult analyze(String text) {
+        return analyze(text, dictionaries.current());
+    }
+
+    SentimentResult analyze(String text, AnalysisDictionaries.Snapshot snapshot) {
         if (text == null || text.isBlank()) {
             return new SentimentResult("NEU", 0.0, 0, 0);
         }
 
-        List<Occurrence> posOccurrences = findOccurrences(text, lexicon.pos());
-        List<Occurrence> negOccurrences = findOccurrences(text, lexicon.neg());
-        List<Occurrence> negationOccurrences = findOccurrences(text, lexicon.negation());
-
-        int negatedPosCount = 0;
-        for (Occurrence posOccurrence : posOccurrences) {
-            if (isNegated(posOccurrence, negationOccurrences)) {
-                negatedPosCount++;
-            }
-        }
+        Rules rules = snapshot.sentimentRules();
+        ScanState state = scanState.get();
+        state.reset(text.length(), rules.posLimit, rules.negLimit);
+        rules.automaton.scanNonOverlapping(text, state);
 
-        int posCount = Math.max(0, posOccurrences.size() - negatedPosCount);
-        int negCount = Math.max(0, negOccurrences.size() + negatedPosCount);
+        int posCount = Math.max(0, state.pos - state.negatedPos);
+        int negCount = Math.max(0, state.neg + state.negatedPos);
 
         String label;
         if (negCount - posCount >= 1) {
@@ -46,43 +47,78 @@ public class SentimentAnalyzer {
         return new SentimentResult(label, score, posCount, negCount);
     }
 
-    private static boolean isNegated(Occurrence posOccurrence, List<Occurrence> negations) {
-        for (Occurrence negation : negations) {
-            if (negation.index() > posOccurrence.index()) {
-                continue;
-            }
-            int gap = posOccurrence.index() - (negation.index() + negation.length());
-            if (gap >= 0 && gap <= 2) {
-                return true;
-            }
+    static final class Rules {
+        private final TermAutomaton automaton;
+        private final int posLimit;
+        private final int negLimit;
+
+        private Rules(TermAutomaton automaton, int posLimit, int negLimit) {
+            this.automaton = automaton;
+            this.posLimit = posLimit;
+            this.negLimit = negLimit;
+        }
+
+        static Rules compile(SentimentLexicon lexicon) {
+            List<String> patterns = new ArrayList<>();
+            addTerms(patterns, lexicon.pos());
+            int posLimit = patterns.size();
+            addTerms(patterns, lexicon.neg());
+            int negLimit = patterns.size();
+            addTerms(patterns, lexicon.negation());
+            return new Rules(TermAutomaton.build(patterns), posLimit, negLimit);
         }
-        return false;
     }
 
-    private static List<Occurrence> findOccurrences(String text, List<String> terms) {
-        List<Occurrence> occurrences = new ArrayList<>();
+    private static void addTerms(List<String> patterns, List<String> terms) {
+        if (terms == null) {
+            return;
+        }
         for (String term : terms) {
-            if (term == null || term.isBlank()) {
-                continue;
+            patterns.add(term == null || term.isBlank() ? "" : term);
+        }
+    }
+
+    private static final class ScanState implements TermAutomaton.MatchHandler {
+        private int[] negationEnds = new int[256];
+        private int epoch;
+        private int posLimit;
+        private int negLimit;
+        private int pos;
+        private int neg;
+        private int negatedPos;
+
+        private void reset(int textLength, int posLimit, int negLimit) {
+            if (negationEnds.length < textLength + 1) {
+                negationEnds = new int[Math.max(textLength + 1, negationEnds.length * 2)];
+                epoch = 0;
             }
-            int index = 0;
-            while (true) {
-                index = text.indexOf(term, index);
-                if (index < 0) {
-                    break;
-                }
-                occurrences.add(new Occurrence(index, term.length()));
-                index = index + Math.max(1, term.length());
+            epoch++;
+            if (epoch == 0) {
+                Arrays.fill(negationEnds, 0);
+                epoch = 1;
             }
+            this.posLimit = posLimit;
+            this.negLimit = negLimit;
+            this.pos = 0;
+            this.neg = 0;
+            this.negatedPos = 0;
         }
-        occurrences.sort((a, b) -> Integer.compare(a.index(), b.index()));
-        return occurrences;
-    }
 
-    private record Occurrence(int index, int length) {
-        private Occurrence {
-            Objects.checkIndex(index, Integer.MAX_VALUE);
+        @Override
+        public void onMatch(int pattern, int start, int end) {
+            if (pattern >= negLimit) {
+                negationEnds[end] = epoch;
+            } else if (pattern >= posLimit) {
+                neg++;
+            } else {
+                pos++;
+                for (int e = Math.max(0, start - NEGATION_WINDOW); e <= start; e++) {
+                    if (negationEnds[e] == epoch) {
+                        negatedPos++;
+                        break;
+                    }
+                }
+            }
         }
     }
 }
-
@@ -0,0 +1,160 @@
+package com.wh.reputation.analysis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+@Service
+public class SentimentRollupService implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(SentimentRollupService.class);
+
+    private static final String OVERALL_SELECT = """
+            select r.product_id, r.platform_id, 0, date(r.effective_time) as d,
+                   count(*),
+                   sum(case when r.overall_sentiment_label = 'POS' then 1 else 0 end),
+                   sum(case when r.overall_sentiment_label = 'NEU' then 1 else 0 end),
+                   sum(case when r.overall_sentiment_label = 'NEG' then 1 else 0 end),
+                   sum(r.overall_sentiment_score),
+                   ?
+            from review r
+            """;
+    private static final String ASPECT_SELECT = """
+            select r.product_id, r.platform_id, rar.aspect_id, date(r.effective_time) as d,
+                   count(*),
+                   sum(case when rar.sentiment_label = 'POS' then 1 else 0 end),
+                   sum(case when rar.sentiment_label = 'NEU' then 1 else 0 end),
+                   sum(case when rar.sentiment_label = 'NEG' then 1 else 0 end),
+                   sum(rar.sentiment_score),
+                   ?
+            from review_aspect_result rar
+            join review r on r.id = rar.review_id
+            """;
+    private static final String INSERT_PREFIX = """
+            insert into daily_sentiment_rollup
+              (product_id, platform_id, aspect_id, stat_date, total, pos_cnt, neu_cnt, neg_cnt, score_sum, updated_at)
+            """;
+    private static final String UPSERT_SUFFIX = """
+             on duplicate key update total = values(total), pos_cnt = values(pos_cnt), neu_cnt = values(neu_cnt),
+                                     neg_cnt = values(neg_cnt), score_sum = values(score_sum), updated_at = values(updated_at)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public SentimentRollupService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        List<Integer> existing = jdbcTemplate.queryForList("select 1 from daily_sentiment_rollup limit 1", Integer.class);
+        if (!existing.isEmpty()) {
+            return;
+        }
+        List<Long> productIds = jdbcTemplate.queryForList("select distinct r.product_id from review r", Long.class);
+        for (Long productId : productIds) {
+            rebuildProduct(productId);
+        }
+        if (!productIds.isEmpty()) {
+            log.info("daily_sentiment_rollup backfilled for {} products", productIds.size());
+        }
+    }
+
+    @Transactional
+    public void rebuildProduct(Long productId) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.update("delete from daily_sentiment_rollup where product_id = ?", productId);
+        jdbcTemplate.update(
+                INSERT_PREFIX + OVERALL_SELECT + " where r.product_id = ? group by r.product_id, r.platform_id, d" + UPSERT_SUFFIX,
+                now,
+                productId
+        );
+        jdbcTemplate.update(
+                INSERT_PREFIX + ASPECT_SELECT + " where r.product_id = ? group by r.product_id, r.platform_id, rar.aspect_id, d" + UPSERT_SUFFIX,
+                now,
+                productId
+        );
+    }
+
+    @Transactional
+    public void refreshReviews(Collection<Long> reviewIds) {
+        if (reviewIds == null || reviewIds.isEmpty()) {
+            return;
+        }
+
+        String placeholders = String.join(",", Collections.nCopies(reviewIds.size(), "?"));
+        Map<Long, TreeSet<LocalDate>> datesByProduct = new TreeMap<>();
+        jdbcTemplate.query("""
+                        select distinct r.product_id as productId,
+                               date(r.effective_time) as d
+                        from review r
+                        where r.id in (%s)
+                        """.formatted(placeholders),
+                rs -> {
+                    datesByProduct.computeIfAbsent(rs.getLong("productId"), k -> new TreeSet<>())
+                            .add(rs.getDate("d").toLocalDate());
+                },
+                reviewIds.toArray()
+        );
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (Map.Entry<Long, TreeSet<LocalDate>> entry : datesByProduct.entrySet()) {
+            refreshDays(entry.getKey(), entry.getValue(), now);
+        }
+    }
+
+    private void refreshDays(Long productId, TreeSet<LocalDate> days, Timestamp now) {
+        String dayPlaceholders = String.join(",", Collections.nCopies(days.size(), "?"));
+        List<Object> dayArgs = new ArrayList<>(days.size());
+        for (LocalDate day : days) {
+            dayArgs.add(Date.valueOf(day));
+        }
+
+        jdbcTemplate.queryForList("select p.id from product p where p.id = ? for update", Long.class, productId);
+
+        List<Object> deleteArgs = new ArrayList<>();
+        deleteArgs.add(productId);
+        deleteArgs.addAll(dayArgs);
+        jdbcTemplate.update(
+                "delete from daily_sentiment_rollup where product_id = ? and stat_date in (%s)".formatted(dayPlaceholders),
+                deleteArgs.toArray()
+        );
+
+        String where = """
+                 where r.product_id = ?
+                   and r.effective_time >= ?
+                   and r.effective_time < ?
+                   and date(r.effective_time) in (%s)
+                """.formatted(dayPlaceholders);
+        List<Object> selectArgs = new ArrayList<>();
+        selectArgs.add(now);
+        selectArgs.add(productId);
+        selectArgs.add(Timestamp.valueOf(days.first().atStartOfDay()));
+        selectArgs.add(Timestamp.valueOf(days.last().plusDays(1).atStartOfDay()));
+        selectArgs.addAll(dayArgs);
+
+        jdbcTemplate.update(
+                INSERT_PREFIX + OVERALL_SELECT + where + " group by r.product_id, r.platform_id, d" + UPSERT_SUFFIX,
+                selectArgs.toArray()
+        );
+        jdbcTemplate.update(
+                INSERT_PREFIX + ASPECT_SELECT + where + " group by r.product_id, r.platform_id, rar.aspect_id, d" + UPSERT_SUFFIX,
+                selectArgs.toArray()
+        );
+    }
+}
@@ -0,0 +1,118 @@
+package com.wh.reputation.analysis;
+
+import java.util.Arrays;
+
+final class SparseVector {
+    private final int[] indices;
+    private final double[] values;
+    private final double normSq;
+
+    SparseVector(int[] indices, double[] values) {
+        this.indices = indices;
+        this.values = values;
+        double sum = 0.0;
+        for (double v : values) {
+            sum += v * v;
+        }
+        this.normSq = sum;
+    }
+
+    static SparseVector unit(int[] indices, double[] values, int length) {
+        long[] keyed = new long[length];
+        for (int i = 0; i < length; i++) {
+            keyed[i] = ((long) indices[i] << 32) | i;
+        }
+        Arrays.sort(keyed);
+
+        int[] sortedIdx = new int[length];
+        double[] sortedVal = new double[length];
+        double norm = 0.0;
+        for (int i = 0; i < length; i++) {
+            int src = (int) keyed[i];
+            sortedIdx[i] = indices[src];
+            sortedVal[i] = values[src];
+            norm += sortedVal[i] * sortedVal[i];
+        }
+        norm = Math.sqrt(norm);
+        if (norm > 0) {
+            for (int i = 0; i < length; i++) {
+                sortedVal[i] /= norm;
+            }
+        }
+        return new SparseVector(sortedIdx, sortedVal);
+    }
+
+    int nnz() {
+        return indices.length;
+    }
+
+    double normSq() {
+        return normSq;
+    }
+
+    double dot(double[] dense) {
+        double sum = 0.0;
+        for (int i = 0; i < indices.length; i++) {
+            sum += values[i] * dense[indices[i]];
+        }
+        return sum;
+    }
+
+    double dot(SparseVector other) {
+        double sum = 0.0;
+        int i = 0;
+        int j = 0;
+        while (i < indices.length && j < other.indices.length) {
+            int a = indices[i];
+            int b = other.indices[j];
+            if (a == b) {
+                sum += values[i++] * other.values[j++];
+            } else if (a < b) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return sum;
+    }
+
+    double distSq(double[] dense, double denseNormSq) {
+        return Math.max(0.0, normSq + denseNormSq - 2.0 * dot(dense));
+    }
+
+    double distSq(SparseVector other) {
+        double sum = 0.0;
+        int i = 0;
+        int j = 0;
+        while (i < indices.length || j < other.indices.length) {
+            double d;
+            if (j >= other.indices.length || (i < indices.length && indices[i] < other.indices[j])) {
+                d = values[i++];
+            } else if (i >= indices.length || other.indices[j] < indices[i]) {
+                d = -other.values[j++];
+            } else {
+                d = values[i++] - other.values[j++];
+            }
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    void addScaledTo(double[] dense, double factor) {
+        for (int i = 0; i < indices.length; i++) {
+            dense[indices[i]] += values[i] * factor;
+        }
+    }
+
+    void addTo(double[] dense) {
+        for (int i = 0; i < indices.length; i++) {
+            dense[indices[i]] += values[i];
+        }
+    }
+
+    double[] toDense(int dim) {
+        double[] dense = new double[dim];
+        addTo(dense);
+        return dense;
+    }
+}
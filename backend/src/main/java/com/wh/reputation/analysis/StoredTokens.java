@@ -0,0 +1,88 @@
+package com.wh.reputation.analysis;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@Component
+public class StoredTokens {
+    private static final TypeReference<List<String>> TOKEN_LIST = new TypeReference<>() {};
+
+    private final TokenizationService tokenizationService;
+    private final TermDictionary termDictionary;
+    private final ObjectMapper objectMapper;
+
+    public StoredTokens(TokenizationService tokenizationService, TermDictionary termDictionary, ObjectMapper objectMapper) {
+        this.tokenizationService = tokenizationService;
+        this.termDictionary = termDictionary;
+        this.objectMapper = objectMapper;
+    }
+
+    static Row read(ResultSet rs) throws SQLException {
+        return new Row(rs.getBytes("tokensBin"), rs.getString("tokensJson"), rs.getString("contentClean"));
+    }
+
+    int[][] termIds(List<Row> rows) {
+        int[][] out = new int[rows.size()][];
+        List<List<String>> pending = new ArrayList<>(Collections.nCopies(rows.size(), null));
+        List<Integer> untokenized = new ArrayList<>();
+        List<String> contents = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            if (row.tokensBin() != null) {
+                out[i] = TermDictionary.unpack(row.tokensBin());
+                continue;
+            }
+            List<String> tokens = parseTokens(row.tokensJson());
+            if (!tokens.isEmpty()) {
+                pending.set(i, tokens);
+            } else if (row.contentClean() != null && !row.contentClean().isBlank()) {
+                untokenized.add(i);
+                contents.add(row.contentClean());
+            }
+        }
+
+        List<List<String>> tokenized = tokenizationService.tokenizeAll(contents);
+        for (int j = 0; j < untokenized.size(); j++) {
+            pending.set(untokenized.get(j), tokenized.get(j));
+        }
+
+        Set<String> terms = new HashSet<>();
+        for (List<String> tokens : pending) {
+            if (tokens != null) {
+                terms.addAll(tokens);
+            }
+        }
+        if (!terms.isEmpty()) {
+            termDictionary.resolve(terms);
+        }
+        for (int i = 0; i < out.length; i++) {
+            if (out[i] == null) {
+                out[i] = pending.get(i) == null ? new int[0] : termDictionary.encode(pending.get(i));
+            }
+        }
+        return out;
+    }
+
+    private List<String> parseTokens(String tokensJson) {
+        if (tokensJson == null || tokensJson.isBlank()) {
+            return List.of();
+        }
+        try {
+            List<String> tokens = objectMapper.readValue(tokensJson, TOKEN_LIST);
+            return tokens == null ? List.of() : tokens;
+        } catch (Exception e) {
+            return List.of();
+        }
+    }
+
+    record Row(byte[] tokensBin, String tokensJson, String contentClean) {}
+}
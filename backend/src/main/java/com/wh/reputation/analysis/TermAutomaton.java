@@ -0,0 +1,264 @@
+package com.wh.reputation.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+final class TermAutomaton {
+    private static final long EMPTY = -1L;
+
+    private final int patternCount;
+    private final int[] patternLengths;
+    private final long[] edgeKeys;
+    private final int[] edgeTargets;
+    private final int edgeMask;
+    private final int[] fail;
+    private final int[] outOffsets;
+    private final int[] outPatterns;
+    private final ThreadLocal<Scratch> scratch;
+
+    @FunctionalInterface
+    interface MatchHandler {
+        void onMatch(int pattern, int start, int end);
+    }
+
+    private TermAutomaton(
+            int patternCount,
+            int[] patternLengths,
+            long[] edgeKeys,
+            int[] edgeTargets,
+            int[] fail,
+            int[] outOffsets,
+            int[] outPatterns
+    ) {
+        this.patternCount = patternCount;
+        this.patternLengths = patternLengths;
+        this.edgeKeys = edgeKeys;
+        this.edgeTargets = edgeTargets;
+        this.edgeMask = edgeKeys.length - 1;
+        this.fail = fail;
+        this.outOffsets = outOffsets;
+        this.outPatterns = outPatterns;
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(patternCount));
+    }
+
+    static TermAutomaton build(List<String> patterns) {
+        int count = patterns.size();
+        int[] lengths = new int[count];
+
+        int maxStates = 1;
+        for (String pattern : patterns) {
+            maxStates += pattern == null ? 0 : pattern.length();
+        }
+
+        int[] parent = new int[maxStates];
+        char[] label = new char[maxStates];
+        int[] firstChild = new int[maxStates];
+        int[] nextSibling = new int[maxStates];
+        Arrays.fill(firstChild, -1);
+        Arrays.fill(nextSibling, -1);
+        List<List<Integer>> own = new ArrayList<>(maxStates);
+        own.add(null);
+
+        int capacity = Integer.highestOneBit(Math.max(16, maxStates * 2 - 1)) << 1;
+        long[] keys = new long[capacity];
+        int[] targets = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        int mask = capacity - 1;
+
+        int states = 1;
+        for (int p = 0; p < count; p++) {
+            String pattern = patterns.get(p);
+            if (pattern == null || pattern.isEmpty()) {
+                continue;
+            }
+            lengths[p] = pattern.length();
+
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                int next = lookup(keys, targets, mask, state, c);
+                if (next < 0) {
+                    next = states++;
+                    parent[next] = state;
+                    label[next] = c;
+                    nextSibling[next] = firstChild[state];
+                    firstChild[state] = next;
+                    own.add(null);
+                    insert(keys, targets, mask, state, c, next);
+                }
+                state = next;
+            }
+            if (own.get(state) == null) {
+                own.set(state, new ArrayList<>(1));
+            }
+            own.get(state).add(p);
+        }
+
+        int[] fail = new int[states];
+        int[][] outputs = new int[states][];
+        outputs[0] = new int[0];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int child = firstChild[0]; child >= 0; child = nextSibling[child]) {
+            fail[child] = 0;
+            queue[tail++] = child;
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            if (parent[state] != 0) {
+                char c = label[state];
+                int f = fail[parent[state]];
+                int target = lookup(keys, targets, mask, f, c);
+                while (f != 0 && target < 0) {
+                    f = fail[f];
+                    target = lookup(keys, targets, mask, f, c);
+                }
+                fail[state] = target < 0 ? 0 : target;
+            }
+
+            int[] inherited = outputs[fail[state]];
+            List<Integer> mine = own.get(state);
+            if (mine == null) {
+                outputs[state] = inherited;
+            } else {
+                int[] merged = new int[mine.size() + inherited.length];
+                for (int i = 0; i < mine.size(); i++) {
+                    merged[i] = mine.get(i);
+                }
+                System.arraycopy(inherited, 0, merged, mine.size(), inherited.length);
+                outputs[state] = merged;
+            }
+
+            for (int child = firstChild[state]; child >= 0; child = nextSibling[child]) {
+                queue[tail++] = child;
+            }
+        }
+
+        int[] offsets = new int[states + 1];
+        for (int s = 0; s < states; s++) {
+            offsets[s + 1] = offsets[s] + outputs[s].length;
+        }
+        int[] flat = new int[offsets[states]];
+        for (int s = 0; s < states; s++) {
+            System.arraycopy(outputs[s], 0, flat, offsets[s], outputs[s].length);
+        }
+
+        return new TermAutomaton(count, lengths, keys, targets, fail, offsets, flat);
+    }
+
+    int patternCount() {
+        return patternCount;
+    }
+
+    int patternLength(int pattern) {
+        return patternLengths[pattern];
+    }
+
+    void scan(String text, MatchHandler handler) {
+        if (text == null || text.isEmpty() || outPatterns.length == 0) {
+            return;
+        }
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = step(state, text.charAt(i));
+            for (int o = outOffsets[state], end = outOffsets[state + 1]; o < end; o++) {
+                int pattern = outPatterns[o];
+                handler.onMatch(pattern, i + 1 - patternLengths[pattern], i + 1);
+            }
+        }
+    }
+
+    void scanNonOverlapping(String text, MatchHandler handler) {
+        if (text == null || text.isEmpty() || outPatterns.length == 0) {
+            return;
+        }
+        Scratch s = scratch.get();
+        int epoch = s.nextEpoch();
+        int[] stamps = s.stamps;
+        int[] nextStart = s.nextStart;
+
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = step(state, text.charAt(i));
+            for (int o = outOffsets[state], end = outOffsets[state + 1]; o < end; o++) {
+                int pattern = outPatterns[o];
+                int start = i + 1 - patternLengths[pattern];
+                if (stamps[pattern] == epoch && start < nextStart[pattern]) {
+                    continue;
+                }
+                stamps[pattern] = epoch;
+                nextStart[pattern] = start + patternLengths[pattern];
+                handler.onMatch(pattern, start, i + 1);
+            }
+        }
+    }
+
+    private int step(int state, char c) {
+        while (true) {
+            int next = lookup(edgeKeys, edgeTargets, edgeMask, state, c);
+            if (next >= 0) {
+                return next;
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = fail[state];
+        }
+    }
+
+    private static int lookup(long[] keys, int[] targets, int mask, int state, char c) {
+        long key = edgeKey(state, c);
+        int slot = mix(key) & mask;
+        while (true) {
+            long k = keys[slot];
+            if (k == EMPTY) {
+                return -1;
+            }
+            if (k == key) {
+                return targets[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static void insert(long[] keys, int[] targets, int mask, int state, char c, int target) {
+        long key = edgeKey(state, c);
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        targets[slot] = target;
+    }
+
+    private static long edgeKey(int state, char c) {
+        return ((long) state << 16) | c;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static final class Scratch {
+        private final int[] stamps;
+        private final int[] nextStart;
+        private int epoch;
+
+        private Scratch(int patternCount) {
+            this.stamps = new int[patternCount];
+            this.nextStart = new int[patternCount];
+        }
+
+        private int nextEpoch() {
+            epoch++;
+            if (epoch == 0) {
+                Arrays.fill(stamps, 0);
+                epoch = 1;
+            }
+            return epoch;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.wh.reputation.analysis;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+public class TermDictionary {
+    private static final int MAX_TERM_LENGTH = 128;
+    private static final int RESOLVE_CHUNK = 1000;
+    private static final int[] NO_IDS = new int[0];
+    private static final long MISS_TTL_MS = 60_000L;
+    private static final int MAX_CACHED_MISSES = 10_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate dictionaryTransaction;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> misses = new ConcurrentHashMap<>();
+    private volatile String[] terms = new String[1024];
+    private volatile int loadedUpTo;
+    private volatile boolean loaded;
+
+    public TermDictionary(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dictionaryTransaction = new TransactionTemplate(transactionManager);
+        this.dictionaryTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public void resolve(Collection<String> tokens) {
+        if (!loaded) {
+            loadNewer();
+        }
+        Set<String> missing = new LinkedHashSet<>();
+        for (String token : tokens) {
+            if (valid(token) && !ids.containsKey(token)) {
+                missing.add(token);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        List<String> pending = new ArrayList<>(missing);
+        dictionaryTransaction.executeWithoutResult(status -> {
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            for (int from = 0; from < pending.size(); from += RESOLVE_CHUNK) {
+                List<String> chunk = pending.subList(from, Math.min(pending.size(), from + RESOLVE_CHUNK));
+                List<Object[]> args = new ArrayList<>(chunk.size());
+                for (String term : chunk) {
+                    args.add(new Object[]{term, now});
+                }
+                jdbcTemplate.batchUpdate("insert ignore into term_dictionary (term, created_at) values (?, ?)", args);
+
+                String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+                jdbcTemplate.query(
+                        "select td.id as id, td.term as term from term_dictionary td where td.term in (%s)".formatted(placeholders),
+                        rs -> {
+                            register(rs.getInt("id"), rs.getString("term"));
+                        },
+                        chunk.toArray()
+                );
+            }
+        });
+    }
+
+    public int[] encode(List<String> tokens) {
+        if (tokens == null || tokens.isEmpty()) {
+            return NO_IDS;
+        }
+        resolve(tokens);
+        int[] out = new int[tokens.size()];
+        int n = 0;
+        for (String token : tokens) {
+            Integer id = valid(token) ? ids.get(token) : null;
+            if (id != null) {
+                out[n++] = id;
+            }
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    public int id(String term) {
+        Integer id = valid(term) ? ids.get(term) : null;
+        return id == null ? -1 : id;
+    }
+
+    public String term(int id) {
+        String[] current = terms;
+        if (id >= 0 && id < current.length && current[id] != null) {
+            return current[id];
+        }
+        if (id < 0) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        Long missedAt = misses.get(id);
+        if (missedAt != null && now - missedAt < MISS_TTL_MS) {
+            return null;
+        }
+
+        if (id > loadedUpTo) {
+            loadPast(id);
+        } else {
+            loadOne(id);
+        }
+        current = terms;
+        String term = id < current.length ? current[id] : null;
+        if (term == null) {
+            if (misses.size() >= MAX_CACHED_MISSES) {
+                misses.clear();
+            }
+            misses.put(id, now);
+        }
+        return term;
+    }
+
+    static byte[] pack(int[] termIds) {
+        byte[] out = new byte[5 * (termIds.length + 1)];
+        int pos = writeVarInt(out, 0, termIds.length);
+        for (int id : termIds) {
+            pos = writeVarInt(out, pos, id);
+        }
+        return Arrays.copyOf(out, pos);
+    }
+
+    static int[] unpack(byte[] data) {
+        int[] pos = {0};
+        int count = readVarInt(data, pos);
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = readVarInt(data, pos);
+        }
+        return ids;
+    }
+
+    private synchronized void loadPast(int id) {
+        if (loaded && id <= loadedUpTo) {
+            return;
+        }
+        loadNewer();
+    }
+
+    private void loadOne(int id) {
+        jdbcTemplate.query(
+                "select td.id as id, td.term as term from term_dictionary td where td.id = ?",
+                rs -> {
+                    register(rs.getInt("id"), rs.getString("term"));
+                },
+                id
+        );
+    }
+
+    private synchronized void loadNewer() {
+        jdbcTemplate.query(
+                "select td.id as id, td.term as term from term_dictionary td where td.id > ? order by td.id asc",
+                rs -> {
+                    int id = rs.getInt("id");
+                    register(id, rs.getString("term"));
+                    loadedUpTo = Math.max(loadedUpTo, id);
+                },
+                loadedUpTo
+        );
+        loaded = true;
+    }
+
+    private synchronized void register(int id, String term) {
+        String[] current = terms;
+        if (id >= current.length) {
+            current = Arrays.copyOf(current, Math.max(id + 1, current.length * 2));
+        }
+        current[id] = term;
+        terms = current;
+        ids.put(term, id);
+    }
+
+    private static boolean valid(String token) {
+        return token != null && !token.isBlank() && token.length() <= MAX_TERM_LENGTH;
+    }
+
+    private static int writeVarInt(byte[] out, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static int readVarInt(byte[] data, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+}
@@ -1,69 +1,196 @@
 package com.wh.reputation.analysis;
 
 import com.huaban.analysis.jieba.JiebaSegmenter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
 public class TokenizationService {
-    private static final Pattern VALID_TOKEN = Pattern.compile("^[\\p{IsHan}A-Za-z0-9]+$");
-
-    private final Stopwords stopwords;
+    private final AnalysisDictionaries dictionaries;
     private final JiebaSegmenter segmenter;
+    private final AnalysisComputePool computePool;
+    private final CacheStripe[] stripes;
+    private final int cacheSize;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private volatile long cacheVersion;
 
-    public TokenizationService(Stopwords stopwords) {
-        this.stopwords = stopwords;
+    public TokenizationService(
+            AnalysisDictionaries dictionaries,
+            AnalysisComputePool computePool,
+            @Value("${reputation.tokenize.cache-size:20000}") int cacheSize,
+            @Value("${reputation.tokenize.cache-stripes:16}") int cacheStripes
+    ) {
+        this.dictionaries = dictionaries;
         this.segmenter = new JiebaSegmenter();
+        this.computePool = computePool;
+        this.cacheSize = Math.max(0, cacheSize);
+        int stripeCount = Integer.highestOneBit(Math.max(1, Math.min(cacheStripes, Math.max(1, this.cacheSize))));
+        this.stripes = new CacheStripe[this.cacheSize == 0 ? 0 : stripeCount];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new CacheStripe(Math.max(1, this.cacheSize / stripeCount));
+        }
     }
 
     public List<String> tokenize(String content) {
-        if (content == null || content.isBlank()) {
+        return tokenize(content, dictionaries.current());
+    }
+
+    public List<List<String>> tokenizeAll(List<String> contents) {
+        if (contents == null || contents.isEmpty()) {
             return List.of();
         }
+        AnalysisDictionaries.Snapshot snapshot = dictionaries.current();
+        return computePool.map(contents, content -> tokenize(content, snapshot));
+    }
 
-        List<String> rawTokens = segmenter.sentenceProcess(content);
-        if (rawTokens == null || rawTokens.isEmpty()) {
+    List<String> tokenize(String content, AnalysisDictionaries.Snapshot snapshot) {
+        if (content == null || content.isBlank()) {
             return List.of();
         }
+        if (stripes.length == 0) {
+            return segment(content, snapshot);
+        }
+        if (snapshot.version() > cacheVersion) {
+            invalidate(snapshot.version());
+        }
 
-        Set<String> stopwordSet = stopwords == null ? Set.of() : stopwords.words();
-        List<String> tokens = new ArrayList<>(rawTokens.size());
-        for (String token : rawTokens) {
-            if (token == null) {
-                continue;
+        long hash = contentHash(content);
+        CacheStripe stripe = stripes[(int) (hash ^ (hash >>> 32)) & (stripes.length - 1)];
+        synchronized (stripe) {
+            CachedTokens cached = stripe.get(hash);
+            if (cached != null && cached.version() == snapshot.version() && cached.content().equals(content)) {
+                hits.increment();
+                return cached.tokens();
             }
-            String trimmed = token.trim();
-            if (trimmed.isBlank()) {
-                continue;
+        }
+        misses.increment();
+        List<String> tokens = segment(content, snapshot);
+        if (snapshot.version() == cacheVersion) {
+            synchronized (stripe) {
+                stripe.put(hash, new CachedTokens(content, snapshot.version(), tokens));
             }
-            String normalized = normalize(trimmed);
-            if (normalized.isBlank()) {
-                continue;
+        }
+        return tokens;
+    }
+
+    public TokenizationStatsDto stats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long size = 0;
+        for (CacheStripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
             }
-            if (stopwordSet.contains(normalized)) {
-                continue;
+        }
+        long lookups = hitCount + missCount;
+        double hitRate = lookups == 0 ? 0.0 : (double) hitCount / lookups;
+        return new TokenizationStatsDto(hitCount, missCount, hitRate, size, cacheSize, dictionaries.current().version());
+    }
+
+    private synchronized void invalidate(long version) {
+        if (version <= cacheVersion) {
+            return;
+        }
+        for (CacheStripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
             }
-            tokens.add(normalized);
         }
-        return tokens;
+        cacheVersion = version;
+    }
+
+    private List<String> segment(String content, AnalysisDictionaries.Snapshot snapshot) {
+        Set<String> stopwordSet = snapshot.stopwords().words();
+        List<String> tokens = new ArrayList<>();
+        snapshot.userDictionary().split(content, new UserDictionary.SegmentHandler() {
+            @Override
+            public void onText(String text) {
+                List<String> rawTokens = segmenter.sentenceProcess(text);
+                if (rawTokens != null) {
+                    for (String token : rawTokens) {
+                        addToken(tokens, token, stopwordSet);
+                    }
+                }
+            }
+
+            @Override
+            public void onTerm(String term) {
+                String normalized = term.toLowerCase(Locale.ROOT);
+                if (!stopwordSet.contains(normalized)) {
+                    tokens.add(normalized);
+                }
+            }
+        });
+        return List.copyOf(tokens);
+    }
+
+    private static void addToken(List<String> tokens, String token, Set<String> stopwordSet) {
+        if (token == null) {
+            return;
+        }
+        String normalized = normalize(token.trim());
+        if (normalized.isEmpty() || stopwordSet.contains(normalized)) {
+            return;
+        }
+        tokens.add(normalized);
     }
 
     private static String normalize(String token) {
-        if (!VALID_TOKEN.matcher(token).matches()) {
+        int length = token.length();
+        if (length == 0) {
             return "";
         }
-        if (token.length() == 1) {
-            int cp = token.codePointAt(0);
-            if (Character.UnicodeScript.of(cp) != Character.UnicodeScript.HAN) {
+        boolean upper = false;
+        for (int i = 0; i < length; ) {
+            int cp = token.codePointAt(i);
+            if (cp < 0x80) {
+                if (length == 1) {
+                    return "";
+                }
+                if (cp >= 'A' && cp <= 'Z') {
+                    upper = true;
+                } else if ((cp < 'a' || cp > 'z') && (cp < '0' || cp > '9')) {
+                    return "";
+                }
+            } else if ((cp < 0x4E00 || cp > 0x9FFF) && Character.UnicodeScript.of(cp) != Character.UnicodeScript.HAN) {
                 return "";
             }
+            i += Character.charCount(cp);
         }
-        return token.toLowerCase(Locale.ROOT);
+        return upper ? token.toLowerCase(Locale.ROOT) : token;
     }
-}
 
+    private static long contentHash(String content) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < content.length(); i++) {
+            h ^= content.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private record CachedTokens(String content, long version, List<String> tokens) {}
+
+    private static final class CacheStripe extends LinkedHashMap<Long, CachedTokens> {
+        private final int capacity;
+
+        private CacheStripe(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, CachedTokens> eldest) {
+            return size() > capacity;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.wh.reputation.analysis;
+
+public record TokenizationStatsDto(
+        long hits,
+        long misses,
+        double hitRate,
+        long cached,
+        int capacity,
+        long dictionaryVersion
+) {}
@@ -3,11 +3,18 @@ package com.wh.reputation.analysis;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.wh.reputation.common.BadRequestException;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -15,22 +22,51 @@ import java.util.*;
 
 @Service
 public class TopicAnalysisService {
-    private static final int DEFAULT_TOPIC_COUNT = 3;
     private static final int TOP_WORDS_PER_TOPIC = 10;
-    private static final int MAX_CANDIDATE_TERMS = 200;
     private static final int MAX_EVIDENCE_REVIEWS = 20;
+    private static final int INITIAL_TRAINING_DOCS = 20000;
+    private static final int MAX_INITIAL_PASSES = 10;
+    private static final double MIN_REVIEW_TOPIC_WEIGHT = 0.1;
 
     private final JdbcTemplate jdbcTemplate;
-    private final TokenizationService tokenizationService;
+    private final StoredTokens storedTokens;
+    private final TermDictionary termDictionary;
+    private final LatestResultStore latestResultStore;
+    private final AnalysisComputePool computePool;
     private final ObjectMapper objectMapper;
-
-    public TopicAnalysisService(JdbcTemplate jdbcTemplate, TokenizationService tokenizationService, ObjectMapper objectMapper) {
+    private final TransactionTemplate stepTransaction;
+    private final int topicCount;
+    private final int batchSize;
+    private final int maxTerms;
+    private final long maxVersionLag;
+
+    public TopicAnalysisService(
+            JdbcTemplate jdbcTemplate,
+            StoredTokens storedTokens,
+            TermDictionary termDictionary,
+            LatestResultStore latestResultStore,
+            AnalysisComputePool computePool,
+            ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager,
+            @Value("${reputation.topic.topic-count:6}") int topicCount,
+            @Value("${reputation.topic.batch-size:512}") int batchSize,
+            @Value("${reputation.topic.max-terms:20000}") int maxTerms,
+            @Value("${reputation.topic.max-version-lag:64}") long maxVersionLag
+    ) {
         this.jdbcTemplate = jdbcTemplate;
-        this.tokenizationService = tokenizationService;
+        this.storedTokens = storedTokens;
+        this.termDictionary = termDictionary;
+        this.latestResultStore = latestResultStore;
+        this.computePool = computePool;
         this.objectMapper = objectMapper;
+        this.stepTransaction = new TransactionTemplate(transactionManager);
+        this.stepTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.topicCount = Math.max(1, topicCount);
+        this.batchSize = Math.max(64, batchSize);
+        this.maxTerms = Math.max(100, maxTerms);
+        this.maxVersionLag = Math.max(0L, maxVersionLag);
     }
 
-    @Transactional
     public TopicsResponseDto topics(Long productId, LocalDate start, LocalDate end) {
         if (productId == null) {
             throw new BadRequestException("productId is required");
@@ -44,120 +80,224 @@ public class TopicAnalysisService {
         return recompute(productId, start, end);
     }
 
-    @Transactional
     public TopicsResponseDto recompute(Long productId, LocalDate start, LocalDate end) {
         if (productId == null) {
             throw new BadRequestException("productId is required");
         }
 
-        List<ReviewRow> rows = loadReviewRows(productId, start, end);
-        if (rows.isEmpty()) {
-            return new TopicsResponseDto(0, List.of());
-        }
+        OnlineLda model = stepTransaction.execute(status -> train(productId));
+        inferPending(productId, model);
+        reinferLagging(productId, start, end, model);
+        return stepTransaction.execute(status -> publish(productId, start, end, model));
+    }
 
-        List<Doc> docs = new ArrayList<>(rows.size());
-        Map<String, Integer> freq = new HashMap<>();
-        for (ReviewRow row : rows) {
-            List<String> tokens = parseTokensOrTokenize(row.tokensJson(), row.contentClean());
-            if (tokens.isEmpty()) {
-                continue;
-            }
-            for (String t : tokens) {
-                freq.merge(t, 1, Integer::sum);
-            }
-            docs.add(new Doc(row.id(), new HashSet<>(tokens)));
+    private TopicsResponseDto publish(Long productId, LocalDate start, LocalDate end, OnlineLda model) {
+        List<Object> params = new ArrayList<>();
+        params.add(productId);
+        String window = windowFilter(start, end, params);
+
+        double[] weightSums = new double[topicCount];
+        jdbcTemplate.query("""
+                        select rt.topic_id as topicId,
+                               sum(rt.weight) as weightSum
+                        from review_topic rt
+                        join review r on r.id = rt.review_id
+                        where rt.product_id = ?
+                        """ + window + " group by rt.topic_id",
+                rs -> {
+                    int topicId = rs.getInt("topicId");
+                    if (topicId >= 0 && topicId < topicCount) {
+                        weightSums[topicId] = rs.getDouble("weightSum");
+                    }
+                },
+                params.toArray()
+        );
+        double total = 0.0;
+        for (double weightSum : weightSums) {
+            total += weightSum;
         }
-
-        if (docs.isEmpty() || freq.isEmpty()) {
+        if (total <= 0.0) {
             return new TopicsResponseDto(0, List.of());
         }
 
-        List<Map.Entry<String, Integer>> candidates = freq.entrySet().stream()
-                .sorted((a, b) -> {
-                    int c1 = Integer.compare(b.getValue(), a.getValue());
-                    if (c1 != 0) {
-                        return c1;
-                    }
-                    int c2 = Integer.compare(b.getKey().length(), a.getKey().length());
-                    if (c2 != 0) {
-                        return c2;
-                    }
-                    return a.getKey().compareTo(b.getKey());
-                })
-                .limit(MAX_CANDIDATE_TERMS)
-                .toList();
-
-        int topicCount = Math.min(DEFAULT_TOPIC_COUNT, candidates.size());
-        if (topicCount <= 0) {
-            return new TopicsResponseDto(0, List.of());
+        List<TopicItemDto> items = new ArrayList<>(topicCount);
+        for (int k = 0; k < topicCount; k++) {
+            List<Object> evidenceParams = new ArrayList<>();
+            evidenceParams.add(productId);
+            evidenceParams.add(k);
+            String evidenceWindow = windowFilter(start, end, evidenceParams);
+            evidenceParams.add(MAX_EVIDENCE_REVIEWS);
+            List<Long> evidenceIds = jdbcTemplate.queryForList("""
+                            select rt.review_id
+                            from review_topic rt
+                            join review r on r.id = rt.review_id
+                            where rt.product_id = ?
+                              and rt.topic_id = ?
+                            """ + evidenceWindow + " order by rt.weight desc, rt.review_id desc limit ?",
+                    Long.class,
+                    evidenceParams.toArray()
+            );
+            items.add(new TopicItemDto(
+                    k,
+                    model.topWords(k, TOP_WORDS_PER_TOPIC),
+                    weightSums[k] / total,
+                    evidenceIds
+            ));
         }
 
-        List<List<String>> buckets = new ArrayList<>(topicCount);
-        for (int i = 0; i < topicCount; i++) {
-            buckets.add(new ArrayList<>());
+        String topicsJson = toJson(items);
+        Timestamp createdAt = Timestamp.valueOf(LocalDateTime.now());
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                    insert into topic_result (product_id, start_date, end_date, topic_count, topics_json, created_at)
+                    values (?, ?, ?, ?, ?, ?)
+                    """, Statement.RETURN_GENERATED_KEYS);
+            ps.setLong(1, productId);
+            ps.setObject(2, toSqlDate(start));
+            ps.setObject(3, toSqlDate(end));
+            ps.setInt(4, topicCount);
+            ps.setString(5, topicsJson);
+            ps.setTimestamp(6, createdAt);
+            return ps;
+        }, keyHolder);
+        Number resultId = keyHolder.getKey();
+        if (resultId == null) {
+            throw new IllegalStateException("failed to insert topic_result");
         }
+        latestResultStore.update(LatestResultStore.TOPIC, productId, start, end, resultId.longValue(), createdAt);
+
+        return new TopicsResponseDto(topicCount, items);
+    }
+
+    private void inferPending(Long productId, OnlineLda model) {
+        InferenceState state = jdbcTemplate.queryForObject("""
+                        select tm.inferred_review_id as inferredReviewId,
+                               tm.inferred_at as inferredAt,
+                               (select max(r.id) from review r where r.product_id = tm.product_id) as maxId,
+                               (select max(r.analyzed_at) from review r where r.product_id = tm.product_id) as analyzedUpTo
+                        from topic_model tm
+                        where tm.product_id = ?
+                        """,
+                (rs, rowNum) -> new InferenceState(
+                        rs.getLong("inferredReviewId"),
+                        rs.getTimestamp("inferredAt"),
+                        rs.getLong("maxId"),
+                        rs.getTimestamp("analyzedUpTo")
+                ),
+                productId
+        );
+        double[][] expElogbeta = model.expElogbeta();
 
-        int totalCandidateFreq = 0;
-        int[] topicFreq = new int[topicCount];
-        int idx = 0;
-        for (Map.Entry<String, Integer> entry : candidates) {
-            int bucket = idx % topicCount;
-            buckets.get(bucket).add(entry.getKey());
-            topicFreq[bucket] += entry.getValue();
-            totalCandidateFreq += entry.getValue();
-            idx++;
+        long afterId = state.inferredReviewId();
+        while (true) {
+            List<ReviewTokens> page = loadPage(productId, afterId, state.maxId(), null, null);
+            if (page.isEmpty()) {
+                break;
+            }
+            afterId = page.get(page.size() - 1).id();
+            inferPage(productId, model, expElogbeta, page, afterId);
         }
 
-        List<TopicItemDto> items = new ArrayList<>(topicCount);
-        for (int i = 0; i < topicCount; i++) {
-            List<String> words = new ArrayList<>(buckets.get(i));
-            words.sort((a, b) -> {
-                int c1 = Integer.compare(freq.getOrDefault(b, 0), freq.getOrDefault(a, 0));
-                if (c1 != 0) {
-                    return c1;
-                }
-                int c2 = Integer.compare(b.length(), a.length());
-                if (c2 != 0) {
-                    return c2;
+        if (state.inferredAt() != null && state.analyzedUpTo() != null && state.analyzedUpTo().after(state.inferredAt())) {
+            afterId = 0;
+            while (true) {
+                List<ReviewTokens> page = loadPage(productId, afterId, state.inferredReviewId(), state.inferredAt(), state.analyzedUpTo());
+                if (page.isEmpty()) {
+                    break;
                 }
-                return a.compareTo(b);
-            });
+                afterId = page.get(page.size() - 1).id();
+                inferPage(productId, model, expElogbeta, page, 0L);
+            }
+        }
 
-            List<String> topWords = words.subList(0, Math.min(TOP_WORDS_PER_TOPIC, words.size()));
-            double weight = totalCandidateFreq <= 0 ? 0.0 : (double) topicFreq[i] / totalCandidateFreq;
-            List<Long> evidenceReviewIds = pickEvidenceReviewIds(docs, topWords);
-            items.add(new TopicItemDto(i, topWords, weight, evidenceReviewIds));
+        if (state.analyzedUpTo() != null) {
+            jdbcTemplate.update(
+                    "update topic_model set inferred_at = ? where product_id = ? and (inferred_at is null or inferred_at < ?)",
+                    state.analyzedUpTo(), productId, state.analyzedUpTo()
+            );
         }
+    }
 
-        String topicsJson = toJson(items);
-        jdbcTemplate.update("""
-                        insert into topic_result (product_id, start_date, end_date, topic_count, topics_json, created_at)
-                        values (?, ?, ?, ?, ?, ?)
-                        """,
-                productId,
-                toSqlDate(start),
-                toSqlDate(end),
-                topicCount,
-                topicsJson,
-                Timestamp.valueOf(LocalDateTime.now())
-        );
+    private void reinferLagging(Long productId, LocalDate start, LocalDate end, OnlineLda model) {
+        long minVersion = model.updates() - maxVersionLag;
+        if (minVersion <= 0) {
+            return;
+        }
+        double[][] expElogbeta = model.expElogbeta();
+        long afterId = 0;
+        while (true) {
+            List<Object> params = new ArrayList<>();
+            params.add(productId);
+            params.add(minVersion);
+            params.add(afterId);
+            String window = windowFilter(start, end, params);
+            params.add(batchSize);
+            List<Long> ids = jdbcTemplate.queryForList("""
+                            select distinct rt.review_id
+                            from review_topic rt
+                            join review r on r.id = rt.review_id
+                            where rt.product_id = ?
+                              and rt.model_version < ?
+                              and rt.review_id > ?
+                            """ + window + " order by rt.review_id asc limit ?",
+                    Long.class,
+                    params.toArray()
+            );
+            if (ids.isEmpty()) {
+                break;
+            }
+            afterId = ids.get(ids.size() - 1);
+            inferPage(productId, model, expElogbeta, loadReviews(productId, ids), 0L);
+        }
+    }
 
-        return new TopicsResponseDto(topicCount, items);
+    private void inferPage(Long productId, OnlineLda model, double[][] expElogbeta, List<ReviewTokens> page, long inferredUpTo) {
+        List<Long> reviewIds = new ArrayList<>(page.size());
+        List<OnlineLda.Doc> docs = new ArrayList<>(page.size());
+        for (ReviewTokens review : page) {
+            OnlineLda.Doc doc = model.toDoc(review.termIds(), false, termDictionary);
+            if (doc != null) {
+                reviewIds.add(review.id());
+                docs.add(doc);
+            }
+        }
+        List<double[]> thetas = computePool.map(docs, doc -> model.infer(doc, expElogbeta));
+
+        List<Object[]> topicArgs = new ArrayList<>();
+        for (int i = 0; i < thetas.size(); i++) {
+            double[] theta = thetas.get(i);
+            for (int k = 0; k < topicCount; k++) {
+                if (theta[k] >= MIN_REVIEW_TOPIC_WEIGHT) {
+                    topicArgs.add(new Object[]{reviewIds.get(i), k, productId, theta[k], model.updates()});
+                }
+            }
+        }
+        stepTransaction.executeWithoutResult(status -> {
+            replaceReviewTopics(page.stream().map(ReviewTokens::id).toList(), topicArgs);
+            if (inferredUpTo > 0) {
+                jdbcTemplate.update(
+                        "update topic_model set inferred_review_id = greatest(inferred_review_id, ?) where product_id = ?",
+                        inferredUpTo, productId
+                );
+            }
+        });
     }
 
     private TopicsResponseDto loadLatest(Long productId, LocalDate start, LocalDate end) {
+        LatestResultStore.Pointer latest = latestResultStore.find(LatestResultStore.TOPIC, productId, start, end);
+        if (latest == null || latest.resultId() == null) {
+            return null;
+        }
+
         String sql = """
                 select tr.topic_count as topicCount,
                        tr.topics_json as topicsJson
                 from topic_result tr
-                where tr.product_id = ?
-                  and tr.start_date <=> ?
-                  and tr.end_date <=> ?
-                order by tr.created_at desc
-                limit 1
+                where tr.id = ?
                 """;
 
-        List<Map<String, Object>> rows = jdbcTemplate.queryForList(sql, productId, toSqlDate(start), toSqlDate(end));
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(sql, latest.resultId());
         if (rows.isEmpty()) {
             return null;
         }
@@ -178,79 +318,168 @@ public class TopicAnalysisService {
         return new TopicsResponseDto(topicCount, items == null ? List.of() : items);
     }
 
-    private List<ReviewRow> loadReviewRows(Long productId, LocalDate start, LocalDate end) {
-        LocalDateTime startTime = start == null ? null : start.atStartOfDay();
-        LocalDateTime endExclusive = end == null ? null : end.plusDays(1).atStartOfDay();
+    private OnlineLda train(Long productId) {
+        jdbcTemplate.update("""
+                        insert into topic_model (product_id, topic_count, term_count, trained_review_id, docs_seen, model_bin, updated_at)
+                        values (?, ?, 0, 0, 0, null, ?)
+                        on duplicate key update product_id = product_id
+                        """,
+                productId, topicCount, Timestamp.valueOf(LocalDateTime.now())
+        );
+        Map<String, Object> state = jdbcTemplate.queryForList("""
+                        select tm.trained_review_id as trainedReviewId,
+                               tm.model_bin as modelBin
+                        from topic_model tm
+                        where tm.product_id = ?
+                        for update
+                        """,
+                productId
+        ).get(0);
+
+        long trainedReviewId = ((Number) state.get("trainedReviewId")).longValue();
+        OnlineLda model = OnlineLda.fromBytes((byte[]) state.get("modelBin"), topicCount, maxTerms);
+        if (model == null) {
+            model = new OnlineLda(topicCount, maxTerms);
+            trainedReviewId = 0;
+            jdbcTemplate.update("delete from review_topic where product_id = ?", productId);
+            jdbcTemplate.update("update topic_model set inferred_review_id = 0, inferred_at = null where product_id = ?", productId);
+        }
+
+        Long maxId = jdbcTemplate.queryForObject("select max(r.id) from review r where r.product_id = ?", Long.class, productId);
+        if (maxId == null || maxId <= trainedReviewId) {
+            return model;
+        }
+        Long corpus = jdbcTemplate.queryForObject("select count(*) from review r where r.product_id = ?", Long.class, productId);
+        Long fresh = jdbcTemplate.queryForObject(
+                "select count(*) from review r where r.product_id = ? and r.id > ? and r.id <= ?",
+                Long.class,
+                productId, trainedReviewId, maxId
+        );
+        long corpusSize = corpus == null ? 0L : corpus;
+        long freshCount = fresh == null ? 0L : fresh;
+        int passes = 1;
+        if (model.updates() == 0 && freshCount > 0) {
+            passes = (int) Math.max(1, Math.min(MAX_INITIAL_PASSES, (INITIAL_TRAINING_DOCS + freshCount - 1) / freshCount));
+        }
+
+        for (int pass = 0; pass < passes; pass++) {
+            long afterId = trainedReviewId;
+            while (true) {
+                List<ReviewTokens> page = loadPage(productId, afterId, maxId, null, null);
+                if (page.isEmpty()) {
+                    break;
+                }
+                afterId = page.get(page.size() - 1).id();
+                List<OnlineLda.Doc> batch = new ArrayList<>(page.size());
+                for (ReviewTokens review : page) {
+                    OnlineLda.Doc doc = model.toDoc(review.termIds(), true, termDictionary);
+                    if (doc != null) {
+                        batch.add(doc);
+                    }
+                }
+                model.update(batch, corpusSize, computePool);
+            }
+        }
+
+        jdbcTemplate.update("""
+                        update topic_model
+                        set topic_count = ?, term_count = ?, trained_review_id = ?, docs_seen = ?, model_bin = ?, updated_at = ?
+                        where product_id = ?
+                        """,
+                topicCount,
+                model.termCount(),
+                maxId,
+                model.docsSeen(),
+                model.toBytes(),
+                Timestamp.valueOf(LocalDateTime.now()),
+                productId
+        );
+        return model;
+    }
+
+    private void replaceReviewTopics(List<Long> reviewIds, List<Object[]> topicArgs) {
+        if (reviewIds.isEmpty()) {
+            return;
+        }
+        String placeholders = String.join(",", Collections.nCopies(reviewIds.size(), "?"));
+        jdbcTemplate.update("delete from review_topic where review_id in (" + placeholders + ")", reviewIds.toArray());
+        if (!topicArgs.isEmpty()) {
+            jdbcTemplate.batchUpdate("""
+                            insert into review_topic (review_id, topic_id, product_id, weight, model_version)
+                            values (?, ?, ?, ?, ?)
+                            """,
+                    topicArgs
+            );
+        }
+    }
 
+    private List<ReviewTokens> loadPage(Long productId, long afterId, long upToId, Timestamp analyzedAfter, Timestamp analyzedUpTo) {
         List<Object> params = new ArrayList<>();
+        params.add(productId);
+        params.add(afterId);
+        params.add(upToId);
         StringBuilder sql = new StringBuilder("""
                 select r.id as id,
-                       r.content_clean as contentClean,
-                       r.tokens_json as tokensJson
+                       r.tokens_bin as tokensBin,
+                       case when r.tokens_bin is null then r.tokens_json end as tokensJson,
+                       case when r.tokens_bin is null then r.content_clean end as contentClean
                 from review r
                 where r.product_id = ?
+                  and r.id > ?
+                  and r.id <= ?
                 """);
-        params.add(productId);
-
-        if (startTime != null) {
-            sql.append(" and coalesce(r.review_time, r.created_at) >= ?");
-            params.add(Timestamp.valueOf(startTime));
-        }
-        if (endExclusive != null) {
-            sql.append(" and coalesce(r.review_time, r.created_at) < ?");
-            params.add(Timestamp.valueOf(endExclusive));
+        if (analyzedAfter != null) {
+            sql.append(" and r.analyzed_at > ? and r.analyzed_at <= ?");
+            params.add(analyzedAfter);
+            params.add(analyzedUpTo);
         }
-        sql.append(" order by r.id asc");
-
-        return jdbcTemplate.query(sql.toString(), (rs, rowNum) -> new ReviewRow(
-                rs.getLong("id"),
-                rs.getString("contentClean"),
-                rs.getString("tokensJson")
-        ), params.toArray());
+        sql.append(" order by r.id asc limit ?");
+        params.add(batchSize);
+        return readTokens(sql.toString(), params);
     }
 
-    private List<String> parseTokensOrTokenize(String tokensJson, String contentClean) {
-        List<String> tokens = parseJsonArray(tokensJson);
-        if (!tokens.isEmpty()) {
-            return tokens;
-        }
-        return tokenizationService.tokenize(contentClean);
+    private List<ReviewTokens> loadReviews(Long productId, List<Long> reviewIds) {
+        List<Object> params = new ArrayList<>();
+        params.add(productId);
+        params.addAll(reviewIds);
+        String placeholders = String.join(",", Collections.nCopies(reviewIds.size(), "?"));
+        return readTokens("""
+                select r.id as id,
+                       r.tokens_bin as tokensBin,
+                       case when r.tokens_bin is null then r.tokens_json end as tokensJson,
+                       case when r.tokens_bin is null then r.content_clean end as contentClean
+                from review r
+                where r.product_id = ?
+                  and r.id in (""" + placeholders + ") order by r.id asc", params);
     }
 
-    private List<String> parseJsonArray(String json) {
-        if (json == null || json.isBlank()) {
-            return List.of();
-        }
-        try {
-            List<String> items = objectMapper.readValue(json, new TypeReference<>() {});
-            return items == null ? List.of() : items;
-        } catch (Exception e) {
-            return List.of();
+    private List<ReviewTokens> readTokens(String sql, List<Object> params) {
+        List<Long> ids = new ArrayList<>();
+        List<StoredTokens.Row> rows = new ArrayList<>();
+        jdbcTemplate.query(sql, rs -> {
+            ids.add(rs.getLong("id"));
+            rows.add(StoredTokens.read(rs));
+        }, params.toArray());
+
+        int[][] termIds = storedTokens.termIds(rows);
+        List<ReviewTokens> page = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            page.add(new ReviewTokens(ids.get(i), termIds[i]));
         }
+        return page;
     }
 
-    private List<Long> pickEvidenceReviewIds(List<Doc> docs, List<String> topWords) {
-        if (docs.isEmpty()) {
-            return List.of();
-        }
-        if (topWords == null || topWords.isEmpty()) {
-            return List.of(docs.get(0).reviewId());
-        }
-
-        Set<String> target = new HashSet<>(topWords);
-        List<Long> evidence = new ArrayList<>();
-        for (Doc doc : docs) {
-            if (!Collections.disjoint(doc.tokens(), target)) {
-                evidence.add(doc.reviewId());
-                if (evidence.size() >= MAX_EVIDENCE_REVIEWS) {
-                    break;
-                }
-            }
+    private static String windowFilter(LocalDate start, LocalDate end, List<Object> params) {
+        StringBuilder sql = new StringBuilder();
+        if (start != null) {
+            sql.append(" and r.effective_time >= ?");
+            params.add(Timestamp.valueOf(start.atStartOfDay()));
         }
-        if (evidence.isEmpty()) {
-            return List.of(docs.get(0).reviewId());
+        if (end != null) {
+            sql.append(" and r.effective_time < ?");
+            params.add(Timestamp.valueOf(end.plusDays(1).atStartOfDay()));
         }
-        return evidence;
+        return sql.toString();
     }
 
     private String toJson(Object value) {
@@ -265,8 +494,8 @@ public class TopicAnalysisService {
         return value == null ? null : Date.valueOf(value);
     }
 
-    private record ReviewRow(Long id, String contentClean, String tokensJson) {}
+    private record ReviewTokens(long id, int[] termIds) {}
 
-    private record Doc(Long reviewId, Set<String> tokens) {}
+    private record InferenceState(long inferredReviewId, Timestamp inferredAt, long maxId, Timestamp analyzedUpTo) {}
 }
 
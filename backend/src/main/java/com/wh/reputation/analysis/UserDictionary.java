@@ -0,0 +1,90 @@
+package com.wh.reputation.analysis;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+final class UserDictionary {
+    static final UserDictionary EMPTY = new UserDictionary(List.of());
+
+    private final List<String> terms;
+    private final TermAutomaton automaton;
+
+    private UserDictionary(List<String> terms) {
+        this.terms = terms;
+        this.automaton = terms.isEmpty() ? null : TermAutomaton.build(terms);
+    }
+
+    static UserDictionary of(Collection<String> terms) {
+        Set<String> unique = new LinkedHashSet<>();
+        for (String term : terms) {
+            if (term != null && !term.isBlank()) {
+                unique.add(fold(term.trim()));
+            }
+        }
+        return unique.isEmpty() ? EMPTY : new UserDictionary(List.copyOf(unique));
+    }
+
+    int size() {
+        return terms.size();
+    }
+
+    void split(String text, SegmentHandler handler) {
+        if (automaton == null) {
+            handler.onText(text);
+            return;
+        }
+        String folded = fold(text);
+        int[] longestEnd = new int[text.length()];
+        automaton.scan(folded, (pattern, start, end) -> {
+            if (end > longestEnd[start] && bounded(folded, start, end)) {
+                longestEnd[start] = end;
+            }
+        });
+
+        int gapStart = 0;
+        int i = 0;
+        while (i < text.length()) {
+            int end = longestEnd[i];
+            if (end <= i) {
+                i++;
+                continue;
+            }
+            if (gapStart < i) {
+                handler.onText(text.substring(gapStart, i));
+            }
+            handler.onTerm(text.substring(i, end));
+            i = end;
+            gapStart = end;
+        }
+        if (gapStart < text.length()) {
+            handler.onText(gapStart == 0 ? text : text.substring(gapStart));
+        }
+    }
+
+    private static boolean bounded(String text, int start, int end) {
+        if (start > 0 && isWordChar(text.charAt(start)) && isWordChar(text.charAt(start - 1))) {
+            return false;
+        }
+        return end >= text.length() || !isWordChar(text.charAt(end - 1)) || !isWordChar(text.charAt(end));
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) && !Character.isIdeographic(c);
+    }
+
+    private static String fold(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    interface SegmentHandler {
+        void onText(String text);
+
+        void onTerm(String term);
+    }
+}
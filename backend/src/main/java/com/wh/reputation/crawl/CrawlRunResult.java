@@ -1,4 +1,3 @@
 package com.wh.reputation.crawl;
 
-public record CrawlRunResult(int inserted, int skipped, int errors, String batchId) {}
-
+public record CrawlRunResult(int inserted, int skipped, int errors, String batchId, Long jobId) {}
@@ -69,8 +69,8 @@ public class CrawlService {
         }
 
         String batchId = "crawl_" + LocalDateTime.now().format(BATCH_TIME_FORMAT);
-        ReviewImportResult result = reviewImportService.importJson(items);
-        return new CrawlRunResult(result.inserted(), result.skipped(), result.errors(), batchId);
+        ReviewImportResult result = reviewImportService.importJson(items, batchId);
+        return new CrawlRunResult(result.inserted(), result.skipped(), result.errors(), batchId, result.jobId());
     }
 
     private Path resolvePlatformDir(String platformName) {
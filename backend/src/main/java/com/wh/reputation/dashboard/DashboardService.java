@@ -6,9 +6,8 @@ import com.wh.reputation.decision.PriorityItemDto;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import java.sql.Timestamp;
+import java.sql.Date;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
@@ -29,28 +28,25 @@ public class DashboardService {
         if (productId == null) {
             throw new BadRequestException("productId is required");
         }
-        LocalDateTime startTime = start == null ? null : start.atStartOfDay();
-        LocalDateTime endExclusive = end == null ? null : end.plusDays(1).atStartOfDay();
-
         List<Object> params = new ArrayList<>();
-        StringBuilder where = new StringBuilder(" where r.product_id = ?");
+        StringBuilder where = new StringBuilder(" where d.product_id = ? and d.aspect_id = 0");
         params.add(productId);
-        if (startTime != null) {
-            where.append(" and coalesce(r.review_time, r.created_at) >= ?");
-            params.add(Timestamp.valueOf(startTime));
+        if (start != null) {
+            where.append(" and d.stat_date >= ?");
+            params.add(Date.valueOf(start));
         }
-        if (endExclusive != null) {
-            where.append(" and coalesce(r.review_time, r.created_at) < ?");
-            params.add(Timestamp.valueOf(endExclusive));
+        if (end != null) {
+            where.append(" and d.stat_date <= ?");
+            params.add(Date.valueOf(end));
         }
         where.append(" ");
 
         String countSql = """
-                select count(*) as total,
-                       sum(case when r.overall_sentiment_label = 'POS' then 1 else 0 end) as posCnt,
-                       sum(case when r.overall_sentiment_label = 'NEU' then 1 else 0 end) as neuCnt,
-                       sum(case when r.overall_sentiment_label = 'NEG' then 1 else 0 end) as negCnt
-                from review r
+                select coalesce(sum(d.total), 0) as total,
+                       coalesce(sum(d.pos_cnt), 0) as posCnt,
+                       coalesce(sum(d.neu_cnt), 0) as neuCnt,
+                       coalesce(sum(d.neg_cnt), 0) as negCnt
+                from daily_sentiment_rollup d
                 """ + where;
 
         CountRow countRow = jdbcTemplate.queryForObject(countSql, (rs, rowNum) -> new CountRow(
@@ -66,13 +62,13 @@ public class DashboardService {
         double negRate = countRow == null ? 0.0 : rate(countRow.negCnt(), total);
 
         String trendSql = """
-                select date(coalesce(r.review_time, r.created_at)) as d,
-                       count(*) as cnt,
-                       sum(case when r.overall_sentiment_label = 'NEG' then 1 else 0 end) as negCnt
-                from review r
+                select d.stat_date as d,
+                       sum(d.total) as cnt,
+                       sum(d.neg_cnt) as negCnt
+                from daily_sentiment_rollup d
                 """ + where + """
-                group by d
-                order by d asc
+                group by d.stat_date
+                order by d.stat_date asc
                 """;
 
         List<DashboardTrendPointDto> trend = jdbcTemplate.query(trendSql, (rs, rowNum) -> {
@@ -89,12 +89,12 @@ public class DecisionPriorityService {
 
     private DateWindow resolveWindow(Long productId, LocalDate start, LocalDate end) {
         LocalDate minDate = jdbcTemplate.queryForObject(
-                "select min(date(coalesce(review_time, created_at))) from review where product_id = ?",
+                "select min(date(effective_time)) from review where product_id = ?",
                 (rs, rowNum) -> rs.getDate(1) == null ? null : rs.getDate(1).toLocalDate(),
                 productId
         );
         LocalDate maxDate = jdbcTemplate.queryForObject(
-                "select max(date(coalesce(review_time, created_at))) from review where product_id = ?",
+                "select max(date(effective_time)) from review where product_id = ?",
                 (rs, rowNum) -> rs.getDate(1) == null ? null : rs.getDate(1).toLocalDate(),
                 productId
         );
@@ -127,11 +127,11 @@ public class DecisionPriorityService {
         List<Object> params = new ArrayList<>();
         params.add(productId);
         if (start != null) {
-            sql.append(" and coalesce(r.review_time, r.created_at) >= ?");
+            sql.append(" and r.effective_time >= ?");
             params.add(Timestamp.valueOf(start));
         }
         if (endExclusive != null) {
-            sql.append(" and coalesce(r.review_time, r.created_at) < ?");
+            sql.append(" and r.effective_time < ?");
             params.add(Timestamp.valueOf(endExclusive));
         }
         sql.append(" group by rar.aspect_id");
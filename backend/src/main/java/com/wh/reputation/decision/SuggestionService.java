@@ -146,16 +146,16 @@ public class SuggestionService {
         params.add(aspectId);
 
         if (startTime != null) {
-            sql.append(" and coalesce(r.review_time, r.created_at) >= ?");
+            sql.append(" and r.effective_time >= ?");
             params.add(Timestamp.valueOf(startTime));
         }
         if (endExclusive != null) {
-            sql.append(" and coalesce(r.review_time, r.created_at) < ?");
+            sql.append(" and r.effective_time < ?");
             params.add(Timestamp.valueOf(endExclusive));
         }
 
         sql.append(" and rar.sentiment_label = 'NEG'");
-        sql.append(" order by coalesce(r.review_time, r.created_at) desc, r.id desc limit ").append(MAX_EVIDENCE);
+        sql.append(" order by r.effective_time desc, r.id desc limit ").append(MAX_EVIDENCE);
 
         List<SuggestionEvidenceDto> evidence = jdbcTemplate.query(sql.toString(), (rs, rowNum) -> new SuggestionEvidenceDto(
                 rs.getLong("reviewId"),
@@ -173,7 +173,7 @@ public class SuggestionService {
                         join review r on r.id = rar.review_id
                         where r.product_id = ?
                           and rar.aspect_id = ?
-                        order by coalesce(r.review_time, r.created_at) desc, r.id desc
+                        order by r.effective_time desc, r.id desc
                         limit ?
                         """,
                 (rs, rowNum) -> new SuggestionEvidenceDto(
@@ -8,9 +8,8 @@ import com.wh.reputation.common.NotFoundException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import java.sql.Timestamp;
+import java.sql.Date;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
@@ -91,25 +90,22 @@ public class EvaluateService {
     }
 
     private WindowOverallStats loadOverallStats(Long productId, LocalDate start, LocalDate end) {
-        LocalDateTime startTime = start == null ? null : start.atStartOfDay();
-        LocalDateTime endExclusive = end == null ? null : end.plusDays(1).atStartOfDay();
-
         List<Object> params = new ArrayList<>();
-        StringBuilder where = new StringBuilder(" where r.product_id = ?");
+        StringBuilder where = new StringBuilder(" where d.product_id = ? and d.aspect_id = 0");
         params.add(productId);
-        if (startTime != null) {
-            where.append(" and coalesce(r.review_time, r.created_at) >= ?");
-            params.add(Timestamp.valueOf(startTime));
+        if (start != null) {
+            where.append(" and d.stat_date >= ?");
+            params.add(Date.valueOf(start));
         }
-        if (endExclusive != null) {
-            where.append(" and coalesce(r.review_time, r.created_at) < ?");
-            params.add(Timestamp.valueOf(endExclusive));
+        if (end != null) {
+            where.append(" and d.stat_date <= ?");
+            params.add(Date.valueOf(end));
         }
 
         String sql = """
-                select count(*) as total,
-                       sum(case when r.overall_sentiment_label = 'NEG' then 1 else 0 end) as negCnt
-                from review r
+                select coalesce(sum(d.total), 0) as total,
+                       coalesce(sum(d.neg_cnt), 0) as negCnt
+                from daily_sentiment_rollup d
                 """ + where;
 
         return jdbcTemplate.queryForObject(sql, (rs, rowNum) -> {
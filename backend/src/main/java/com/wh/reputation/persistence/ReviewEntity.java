@@ -47,6 +47,9 @@ public class ReviewEntity {
     @Column(name = "review_time")
     private LocalDateTime reviewTime;
 
+    @Column(name = "effective_time", insertable = false, updatable = false)
+    private LocalDateTime effectiveTime;
+
     @Column(name = "like_count")
     private Integer likeCount;
 
@@ -128,6 +131,10 @@ public class ReviewEntity {
         return reviewTime;
     }
 
+    public LocalDateTime getEffectiveTime() {
+        return effectiveTime;
+    }
+
     public Integer getLikeCount() {
         return likeCount;
     }
@@ -18,8 +18,8 @@ public interface ReviewRepository extends JpaRepository<ReviewEntity, Long>, Jpa
     @Query("""
             select r.id from ReviewEntity r
             where r.product.id = :productId
-              and (:start is null or coalesce(r.reviewTime, r.createdAt) >= :start)
-              and (:endExclusive is null or coalesce(r.reviewTime, r.createdAt) < :endExclusive)
+              and (:start is null or r.effectiveTime >= :start)
+              and (:endExclusive is null or r.effectiveTime < :endExclusive)
             order by r.id asc
             """)
     List<Long> findIdsForAnalysis(
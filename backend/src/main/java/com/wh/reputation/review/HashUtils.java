@@ -1,5 +1,7 @@
 package com.wh.reputation.review;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -8,13 +10,29 @@ final class HashUtils {
     private HashUtils() {}
 
     static String sha256Hex(String input) {
-        MessageDigest digest;
+        MessageDigest digest = sha256();
+        return toHex(digest.digest(input.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static String sha256Hex(InputStream input) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) > 0) {
+            digest.update(buffer, 0, read);
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
         try {
-            digest = MessageDigest.getInstance("SHA-256");
+            return MessageDigest.getInstance("SHA-256");
         } catch (NoSuchAlgorithmException e) {
             throw new IllegalStateException("SHA-256 not available", e);
         }
-        byte[] hashed = digest.digest(input.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String toHex(byte[] hashed) {
         StringBuilder sb = new StringBuilder(hashed.length * 2);
         for (byte b : hashed) {
             sb.append(String.format("%02x", b));
@@ -0,0 +1,98 @@
+package com.wh.reputation.review;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@Component
+public class ReviewBulkInserter {
+    private static final int MAX_ROWS_PER_STATEMENT = 2000;
+    private static final String INSERT_SQL = """
+            insert into review (platform_id, product_id, review_id_raw, rating, content_raw, content_clean,
+                                review_time, like_count, batch_id, hash, overall_sentiment_label, overall_sentiment_score, created_at)
+            values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 'NEU', 0.0, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ReviewBulkInserter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public List<Long> insert(List<NewReviewRow> rows) {
+        if (rows == null || rows.isEmpty()) {
+            return List.of();
+        }
+
+        List<Long> ids = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i += MAX_ROWS_PER_STATEMENT) {
+            List<NewReviewRow> slice = rows.subList(i, Math.min(i + MAX_ROWS_PER_STATEMENT, rows.size()));
+            ids.addAll(jdbcTemplate.execute((ConnectionCallback<List<Long>>) con -> insertBatch(con, slice)));
+        }
+        return ids;
+    }
+
+    private static List<Long> insertBatch(Connection con, List<NewReviewRow> rows) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            for (NewReviewRow row : rows) {
+                ps.setLong(1, row.platformId());
+                ps.setLong(2, row.productId());
+                ps.setString(3, row.reviewIdRaw());
+                setNullableInt(ps, 4, row.rating());
+                ps.setString(5, row.contentRaw());
+                ps.setString(6, row.contentClean());
+                ps.setTimestamp(7, row.reviewTime() == null ? null : Timestamp.valueOf(row.reviewTime()));
+                setNullableInt(ps, 8, row.likeCount());
+                ps.setString(9, row.batchId());
+                ps.setString(10, row.hash());
+                ps.setTimestamp(11, Timestamp.valueOf(row.createdAt()));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+
+            List<Long> ids = new ArrayList<>(rows.size());
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                while (keys.next()) {
+                    ids.add(keys.getLong(1));
+                }
+            }
+            if (ids.size() != rows.size()) {
+                throw new IllegalStateException("generated keys mismatch: expected " + rows.size() + ", got " + ids.size());
+            }
+            return ids;
+        }
+    }
+
+    private static void setNullableInt(PreparedStatement ps, int index, Integer value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.INTEGER);
+        } else {
+            ps.setInt(index, value);
+        }
+    }
+
+    public record NewReviewRow(
+            long platformId,
+            long productId,
+            String reviewIdRaw,
+            Integer rating,
+            String contentRaw,
+            String contentClean,
+            LocalDateTime reviewTime,
+            Integer likeCount,
+            String batchId,
+            String hash,
+            LocalDateTime createdAt
+    ) {}
+}
@@ -0,0 +1,48 @@
+package com.wh.reputation.review;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+@Component
+public class ReviewCountCache {
+    private static final int MAX_ENTRIES = 10_000;
+
+    private final long ttlMs;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public ReviewCountCache(@Value("${reputation.reviews.count-cache-ttl-ms:60000}") long ttlMs) {
+        this.ttlMs = Math.max(0L, ttlMs);
+    }
+
+    public long get(String signature, LongSupplier loader) {
+        if (ttlMs == 0L) {
+            return loader.getAsLong();
+        }
+
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(signature);
+        if (entry != null && entry.expiresAt() > now) {
+            return entry.total();
+        }
+
+        long total = loader.getAsLong();
+        if (entries.size() >= MAX_ENTRIES) {
+            entries.values().removeIf(e -> e.expiresAt() <= now);
+            if (entries.size() >= MAX_ENTRIES) {
+                entries.clear();
+            }
+        }
+        entries.put(signature, new Entry(total, now + ttlMs));
+        return total;
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    private record Entry(long total, long expiresAt) {}
+}
@@ -1,4 +1,3 @@
 package com.wh.reputation.review;
 
-public record ReviewImportResult(int inserted, int skipped, int errors) {}
-
+public record ReviewImportResult(int inserted, int skipped, int errors, Long jobId) {}
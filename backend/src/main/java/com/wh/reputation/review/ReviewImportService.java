@@ -2,13 +2,12 @@ package com.wh.reputation.review;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.wh.reputation.analysis.ReviewAnalysisService;
+import com.wh.reputation.analysis.AnalysisJobService;
 import com.wh.reputation.common.BadRequestException;
 import com.wh.reputation.persistence.PlatformEntity;
 import com.wh.reputation.persistence.PlatformRepository;
 import com.wh.reputation.persistence.ProductEntity;
 import com.wh.reputation.persistence.ProductRepository;
-import com.wh.reputation.persistence.ReviewEntity;
 import com.wh.reputation.persistence.ReviewRepository;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellType;
@@ -18,14 +17,20 @@ import org.apache.poi.ss.usermodel.FormulaEvaluator;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
@@ -50,24 +55,39 @@ public class ReviewImportService {
     private final PlatformRepository platformRepository;
     private final ProductRepository productRepository;
     private final ReviewRepository reviewRepository;
-    private final ReviewAnalysisService reviewAnalysisService;
+    private final ReviewBulkInserter reviewBulkInserter;
+    private final AnalysisJobService analysisJobService;
+    private final ReviewCountCache reviewCountCache;
     private final ObjectMapper objectMapper;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate chunkTransaction;
+    private final int chunkSize;
 
     public ReviewImportService(
             PlatformRepository platformRepository,
             ProductRepository productRepository,
             ReviewRepository reviewRepository,
-            ReviewAnalysisService reviewAnalysisService,
-            ObjectMapper objectMapper
+            ReviewBulkInserter reviewBulkInserter,
+            AnalysisJobService analysisJobService,
+            ReviewCountCache reviewCountCache,
+            ObjectMapper objectMapper,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${reputation.import.chunk-size:1000}") int chunkSize
     ) {
         this.platformRepository = platformRepository;
         this.productRepository = productRepository;
         this.reviewRepository = reviewRepository;
-        this.reviewAnalysisService = reviewAnalysisService;
+        this.reviewBulkInserter = reviewBulkInserter;
+        this.analysisJobService = analysisJobService;
+        this.reviewCountCache = reviewCountCache;
         this.objectMapper = objectMapper;
+        this.jdbcTemplate = jdbcTemplate;
+        this.chunkTransaction = new TransactionTemplate(transactionManager);
+        this.chunkTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.chunkSize = Math.max(1, chunkSize);
     }
 
-    @Transactional
     public ReviewImportResult importFile(MultipartFile file) {
         if (file == null || file.isEmpty()) {
             throw new BadRequestException("file is required");
@@ -79,19 +99,19 @@ public class ReviewImportService {
             return importCsv(file);
         }
         if (lower.endsWith(".xlsx")) {
-            return importXlsx(file);
+            return importXlsx(file, newBatchId());
         }
         if (lower.endsWith(".json")) {
-            return importJsonFile(file);
+            return importJsonFile(file, newBatchId());
         }
 
         String contentType = file.getContentType();
         String contentTypeLower = contentType == null ? "" : contentType.toLowerCase(Locale.ROOT);
         if (contentTypeLower.contains("spreadsheet") || contentTypeLower.contains("excel")) {
-            return importXlsx(file);
+            return importXlsx(file, newBatchId());
         }
         if (contentTypeLower.contains("json")) {
-            return importJsonFile(file);
+            return importJsonFile(file, newBatchId());
         }
         if (contentTypeLower.contains("csv") || contentTypeLower.contains("text/plain")) {
             return importCsv(file);
@@ -102,21 +122,31 @@ public class ReviewImportService {
 
     @Transactional
     public ReviewImportResult importJson(List<ReviewImportItem> items) {
+        return importJson(items, newBatchId());
+    }
+
+    @Transactional
+    public ReviewImportResult importJson(List<ReviewImportItem> items, String batchId) {
         if (items == null) {
             throw new BadRequestException("body is required");
         }
-        return importItems(items);
+        return importItems(items, batchId);
     }
 
-    @Transactional
     public ReviewImportResult importCsv(MultipartFile file) {
         if (file == null || file.isEmpty()) {
             throw new BadRequestException("file is required");
         }
 
-        int errors = 0;
-        List<ValidRow> validRows = new ArrayList<>();
+        String fileHash;
+        try (var input = file.getInputStream()) {
+            fileHash = HashUtils.sha256Hex(input);
+        } catch (IOException e) {
+            throw new IllegalStateException("failed to read csv", e);
+        }
 
+        String batchId;
+        ImportProgress progress;
         try (var reader = new BufferedReader(new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8))) {
             String headerLine = reader.readLine();
             if (headerLine == null) {
@@ -129,55 +159,142 @@ public class ReviewImportService {
                 throw new BadRequestException("invalid csv header");
             }
 
+            Checkpoint checkpoint = startCheckpoint(fileHash, file.getOriginalFilename());
+            batchId = checkpoint.batchId();
+            progress = checkpoint.progress();
+            long resumeAfter = progress.lineNo();
+            long lineNo = 0;
+            List<ValidRow> chunk = new ArrayList<>(Math.min(chunkSize, 4096));
+
             String line;
             while ((line = reader.readLine()) != null) {
-                if (line.isBlank()) {
-                    continue;
-                }
-
-                List<String> cols;
-                try {
-                    cols = CsvUtils.parseLine(line);
-                } catch (IllegalArgumentException e) {
-                    errors++;
-                    continue;
-                }
-                if (cols.size() != EXPECTED_HEADER.size()) {
-                    errors++;
+                lineNo++;
+                if (lineNo <= resumeAfter || line.isBlank()) {
                     continue;
                 }
 
                 Optional<ValidRow> parsed;
                 try {
-                    parsed = parseRow(cols);
+                    List<String> cols = CsvUtils.parseLine(line);
+                    parsed = cols.size() == EXPECTED_HEADER.size() ? parseRow(cols) : Optional.empty();
                 } catch (IllegalArgumentException e) {
-                    errors++;
-                    continue;
+                    parsed = Optional.empty();
                 }
                 if (parsed.isEmpty()) {
-                    errors++;
+                    progress = progress.withError();
                     continue;
                 }
-                validRows.add(parsed.get());
+                chunk.add(parsed.get());
+
+                if (chunk.size() >= chunkSize) {
+                    progress = commitChunk(fileHash, batchId, chunk, lineNo, progress);
+                    chunk.clear();
+                }
             }
+            progress = commitChunk(fileHash, batchId, chunk, lineNo, progress);
         } catch (IOException e) {
             throw new IllegalStateException("failed to read csv", e);
         }
 
-        return saveValidRows(validRows, errors);
+        ImportProgress finished = progress;
+        Long jobId = chunkTransaction.execute(status -> {
+            finishCheckpoint(fileHash);
+            return finished.inserted() > 0 ? analysisJobService.submitImport(batchId, finished.inserted()) : null;
+        });
+        if (finished.inserted() > 0) {
+            reviewCountCache.invalidateAll();
+        }
+        return new ReviewImportResult(finished.inserted(), finished.skipped(), finished.errors(), jobId);
+    }
+
+    private ImportProgress commitChunk(
+            String fileHash,
+            String batchId,
+            List<ValidRow> chunk,
+            long lineNo,
+            ImportProgress progress
+    ) {
+        return chunkTransaction.execute(status -> {
+            SavedRows saved = insertNewRows(chunk, batchId);
+            ImportProgress next = progress.advance(lineNo, saved.inserted(), saved.skipped());
+            saveCheckpoint(fileHash, next);
+            return next;
+        });
+    }
+
+    private Checkpoint startCheckpoint(String fileHash, String fileName) {
+        List<Checkpoint> rows = jdbcTemplate.query("""
+                        select ic.batch_id as batchId,
+                               ic.line_no as lineNo,
+                               ic.inserted as inserted,
+                               ic.skipped as skipped,
+                               ic.errors as errors
+                        from import_checkpoint ic
+                        where ic.file_hash = ?
+                          and ic.status = 'running'
+                        """,
+                (rs, rowNum) -> new Checkpoint(
+                        rs.getString("batchId"),
+                        new ImportProgress(
+                                rs.getLong("lineNo"),
+                                rs.getInt("inserted"),
+                                rs.getInt("skipped"),
+                                rs.getInt("errors")
+                        )
+                ),
+                fileHash
+        );
+        if (!rows.isEmpty() && rows.get(0).batchId() != null) {
+            return rows.get(0);
+        }
+
+        String batchId = newBatchId();
+        Timestamp now = Timestamp.valueOf(now());
+        jdbcTemplate.update("""
+                        insert into import_checkpoint (file_hash, file_name, batch_id, line_no, inserted, skipped, errors, status, created_at, updated_at)
+                        values (?, ?, ?, 0, 0, 0, 0, 'running', ?, ?)
+                        on duplicate key update line_no = 0, inserted = 0, skipped = 0, errors = 0, status = 'running',
+                                                file_name = values(file_name), batch_id = values(batch_id), updated_at = values(updated_at)
+                        """,
+                fileHash,
+                truncate(fileName, 255),
+                batchId,
+                now,
+                now
+        );
+        return new Checkpoint(batchId, new ImportProgress(0, 0, 0, 0));
     }
 
-    private ReviewImportResult importJsonFile(MultipartFile file) {
+    private void saveCheckpoint(String fileHash, ImportProgress progress) {
+        jdbcTemplate.update("""
+                        update import_checkpoint
+                        set line_no = ?, inserted = ?, skipped = ?, errors = ?, updated_at = ?
+                        where file_hash = ?
+                        """,
+                progress.lineNo(),
+                progress.inserted(),
+                progress.skipped(),
+                progress.errors(),
+                Timestamp.valueOf(now()),
+                fileHash
+        );
+    }
+
+    private void finishCheckpoint(String fileHash) {
+        jdbcTemplate.update("delete from import_checkpoint where file_hash = ?", fileHash);
+    }
+
+    private ReviewImportResult importJsonFile(MultipartFile file, String batchId) {
         List<ReviewImportItem> items;
         try (var input = file.getInputStream()) {
             items = objectMapper.readValue(input, new TypeReference<>() {});
         } catch (IOException e) {
             throw new BadRequestException("invalid json file");
         }
-        return importItems(items);
+        return chunkTransaction.execute(status -> importItems(items, batchId));
     }
 
-    private ReviewImportResult importXlsx(MultipartFile file) {
+    private ReviewImportResult importXlsx(MultipartFile file, String batchId) {
         int errors = 0;
         List<ValidRow> validRows = new ArrayList<>();
 
@@ -235,10 +352,11 @@ public class ReviewImportService {
             throw new IllegalStateException("failed to read xlsx", e);
         }
 
-        return saveValidRows(validRows, errors);
+        int errorCount = errors;
+        return chunkTransaction.execute(status -> saveValidRows(validRows, errorCount, batchId));
     }
 
-    private ReviewImportResult importItems(List<ReviewImportItem> items) {
+    private ReviewImportResult importItems(List<ReviewImportItem> items, String batchId) {
         int errors = 0;
         List<ValidRow> validRows = new ArrayList<>();
         for (ReviewImportItem item : items) {
@@ -273,30 +391,41 @@ public class ReviewImportService {
             validRows.add(parsed.get());
         }
 
-        return saveValidRows(validRows, errors);
+        return saveValidRows(validRows, errors, batchId);
+    }
+
+    private ReviewImportResult saveValidRows(List<ValidRow> validRows, int errors, String batchId) {
+        SavedRows saved = insertNewRows(validRows, batchId);
+        Long jobId = null;
+        if (saved.inserted() > 0) {
+            jobId = analysisJobService.submitImport(batchId, saved.inserted());
+            reviewCountCache.invalidateAll();
+        }
+        return new ReviewImportResult(saved.inserted(), saved.skipped(), errors, jobId);
     }
 
-    private ReviewImportResult saveValidRows(List<ValidRow> validRows, int errors) {
+    private SavedRows insertNewRows(List<ValidRow> validRows, String batchId) {
         Set<String> existingHashes = loadExistingHashes(validRows);
-        Map<String, PlatformEntity> platformCache = new HashMap<>();
-        Map<ProductKey, ProductEntity> productCache = new HashMap<>();
+        Map<String, Long> platformCache = new HashMap<>();
+        Map<ProductKey, Long> productCache = new HashMap<>();
 
-        int inserted = 0;
         int skipped = 0;
-        List<Long> insertedReviewIds = new ArrayList<>();
+        LocalDateTime createdAt = now();
+        List<ReviewBulkInserter.NewReviewRow> newRows = new ArrayList<>();
         for (ValidRow row : validRows) {
-            if (existingHashes.contains(row.hash())) {
+            if (!existingHashes.add(row.hash())) {
                 skipped++;
                 continue;
             }
 
-            PlatformEntity platform = platformCache.computeIfAbsent(row.platformName(), name ->
+            Long platformId = platformCache.computeIfAbsent(row.platformName(), name ->
                     platformRepository.findByName(name)
                             .orElseGet(() -> platformRepository.save(new PlatformEntity(name, now())))
+                            .getId()
             );
 
             ProductKey productKey = new ProductKey(row.productName(), row.brand(), row.model());
-            ProductEntity product = productCache.computeIfAbsent(productKey, key ->
+            Long productId = productCache.computeIfAbsent(productKey, key ->
                     productRepository.findExisting(key.name(), key.brand(), key.model())
                             .or(() -> key.brand() == null && key.model() == null
                                     ? productRepository.findFirstByNameOrderByIdAsc(key.name())
@@ -308,32 +437,30 @@ public class ReviewImportService {
                                      false,
                                      now()
                              )))
+                             .getId()
              );
 
-            ReviewEntity entity = new ReviewEntity(
-                    platform,
-                    product,
+            newRows.add(new ReviewBulkInserter.NewReviewRow(
+                    platformId,
+                    productId,
                     row.reviewIdRaw(),
                     row.rating(),
                     row.contentRaw(),
                     row.contentClean(),
                     row.reviewTime(),
                     row.likeCount(),
+                    batchId,
                     row.hash(),
-                    "NEU",
-                    0.0,
-                    now()
-            );
-            ReviewEntity saved = reviewRepository.save(entity);
-
-            existingHashes.add(row.hash());
-            inserted++;
-            insertedReviewIds.add(saved.getId());
+                    createdAt
+            ));
         }
 
-        reviewAnalysisService.analyzeReviewIds(insertedReviewIds);
+        List<Long> insertedReviewIds = reviewBulkInserter.insert(newRows);
+        return new SavedRows(insertedReviewIds.size(), skipped, insertedReviewIds);
+    }
 
-        return new ReviewImportResult(inserted, skipped, errors);
+    private static String newBatchId() {
+        return "import_" + UUID.randomUUID().toString().replace("-", "");
     }
 
     private static List<String> stripBom(List<String> header) {
@@ -497,6 +624,13 @@ public class ReviewImportService {
         return LocalDateTime.now();
     }
 
+    private static String truncate(String value, int maxLen) {
+        if (value == null || value.length() <= maxLen) {
+            return value;
+        }
+        return value.substring(0, maxLen);
+    }
+
     private static String toNullIfBlank(String input) {
         if (input == null) {
             return null;
@@ -518,6 +652,20 @@ public class ReviewImportService {
 
     private record ProductKey(String name, String brand, String model) {}
 
+    private record SavedRows(int inserted, int skipped, List<Long> reviewIds) {}
+
+    private record Checkpoint(String batchId, ImportProgress progress) {}
+
+    private record ImportProgress(long lineNo, int inserted, int skipped, int errors) {
+        ImportProgress withError() {
+            return new ImportProgress(lineNo, inserted, skipped, errors + 1);
+        }
+
+        ImportProgress advance(long toLineNo, int insertedDelta, int skippedDelta) {
+            return new ImportProgress(toLineNo, inserted + insertedDelta, skipped + skippedDelta, errors);
+        }
+    }
+
     private record ValidRow(
             String platformName,
             String productName,
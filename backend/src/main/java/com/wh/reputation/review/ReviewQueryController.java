@@ -26,9 +26,11 @@ public class ReviewQueryController {
             @RequestParam(value = "start", required = false) String start,
             @RequestParam(value = "end", required = false) String end,
             @RequestParam(value = "page", required = false, defaultValue = "1") Integer page,
-            @RequestParam(value = "pageSize", required = false, defaultValue = "20") Integer pageSize
+            @RequestParam(value = "pageSize", required = false, defaultValue = "20") Integer pageSize,
+            @RequestParam(value = "afterId", required = false) Long afterId,
+            @RequestParam(value = "cursor", required = false) String cursor
     ) {
-        return ApiResponse.ok(reviewQueryService.list(productId, platformId, aspectId, sentiment, keyword, start, end, page, pageSize));
+        return ApiResponse.ok(reviewQueryService.list(productId, platformId, aspectId, sentiment, keyword, start, end, page, pageSize, afterId, cursor));
     }
 
     @GetMapping("/{id}")
@@ -2,11 +2,13 @@ package com.wh.reputation.review;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wh.reputation.analysis.ReviewSearchIndex;
 import com.wh.reputation.common.BadRequestException;
 import com.wh.reputation.common.NotFoundException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -21,10 +23,19 @@ public class ReviewQueryService {
 
     private final JdbcTemplate jdbcTemplate;
     private final ObjectMapper objectMapper;
-
-    public ReviewQueryService(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper) {
+    private final ReviewCountCache reviewCountCache;
+    private final ReviewSearchIndex reviewSearchIndex;
+
+    public ReviewQueryService(
+            JdbcTemplate jdbcTemplate,
+            ObjectMapper objectMapper,
+            ReviewCountCache reviewCountCache,
+            ReviewSearchIndex reviewSearchIndex
+    ) {
         this.jdbcTemplate = jdbcTemplate;
         this.objectMapper = objectMapper;
+        this.reviewCountCache = reviewCountCache;
+        this.reviewSearchIndex = reviewSearchIndex;
     }
 
     public ReviewsPageDto list(
@@ -36,7 +47,9 @@ public class ReviewQueryService {
             String start,
             String end,
             Integer page,
-            Integer pageSize
+            Integer pageSize,
+            Long afterId,
+            String cursor
     ) {
         if (productId == null) {
             throw new BadRequestException("productId is required");
@@ -58,12 +71,28 @@ public class ReviewQueryService {
         List<Object> params = new ArrayList<>();
         String where = buildReviewWhereClause(productId, platformId, aspectId, sentiment, keyword, startTime, endExclusive, params);
 
-        long total = jdbcTemplate.queryForObject("select count(*) from review r where " + where, Long.class, params.toArray());
-        int offset = (safePage - 1) * safePageSize;
+        String countSql = "select count(*) from review r where " + where;
+        String countKey = productId + "|" + platformId + "|" + aspectId + "|" + sentiment + "|"
+                + (keyword == null ? "" : keyword.trim()) + "|" + startDate + "|" + endDate;
+        long total = reviewCountCache.get(countKey, () -> {
+            Long count = jdbcTemplate.queryForObject(countSql, Long.class, params.toArray());
+            return count == null ? 0L : count;
+        });
 
+        Long seekId = cursor == null || cursor.isBlank() ? afterId : decodeCursor(cursor);
         List<Object> listParams = new ArrayList<>(params);
-        listParams.add(safePageSize);
-        listParams.add(offset);
+        String pageWhere = where;
+        String limitClause;
+        if (seekId != null) {
+            pageWhere = where + " and r.id < ?";
+            listParams.add(seekId);
+            limitClause = "limit ?";
+            listParams.add(safePageSize);
+        } else {
+            limitClause = "limit ? offset ?";
+            listParams.add(safePageSize);
+            listParams.add((long) (safePage - 1) * safePageSize);
+        }
 
         String sql = """
                 select r.id as id,
@@ -79,8 +108,8 @@ public class ReviewQueryService {
                 join product pr on pr.id = r.product_id
                 where %s
                 order by r.id desc
-                limit ? offset ?
-                """.formatted(where);
+                %s
+                """.formatted(pageWhere, limitClause);
 
         List<ReviewRow> rows = jdbcTemplate.query(sql, (rs, rowNum) -> new ReviewRow(
                 rs.getLong("id"),
@@ -108,7 +137,8 @@ public class ReviewQueryService {
                 aspectsByReviewId.getOrDefault(row.id(), List.of())
         )).toList();
 
-        return new ReviewsPageDto(safePage, safePageSize, total, items);
+        String nextCursor = rows.size() < safePageSize ? null : encodeCursor(rows.get(rows.size() - 1).id());
+        return new ReviewsPageDto(safePage, safePageSize, total, items, nextCursor);
     }
 
     public ReviewDetailDto detail(Long id) {
@@ -235,7 +265,7 @@ public class ReviewQueryService {
         }
     }
 
-    private static String buildReviewWhereClause(
+    private String buildReviewWhereClause(
             Long productId,
             Long platformId,
             Long aspectId,
@@ -261,20 +291,43 @@ public class ReviewQueryService {
             params.add(sentiment.trim().toUpperCase(Locale.ROOT));
         }
         if (keyword != null && !keyword.isBlank()) {
+            long[] candidates = reviewSearchIndex.candidates(productId, keyword);
+            if (candidates != null && candidates.length == 0) {
+                sb.append(" and r.tokens_json is null");
+            } else if (candidates != null) {
+                String placeholders = String.join(",", Collections.nCopies(candidates.length, "?"));
+                sb.append(" and (r.id in (%s) or r.tokens_json is null)".formatted(placeholders));
+                for (long id : candidates) {
+                    params.add(id);
+                }
+            }
             sb.append(" and r.content_clean like ?");
             params.add("%" + keyword.trim() + "%");
         }
         if (startTime != null) {
-            sb.append(" and coalesce(r.review_time, r.created_at) >= ?");
+            sb.append(" and r.effective_time >= ?");
             params.add(Timestamp.valueOf(startTime));
         }
         if (endExclusive != null) {
-            sb.append(" and coalesce(r.review_time, r.created_at) < ?");
+            sb.append(" and r.effective_time < ?");
             params.add(Timestamp.valueOf(endExclusive));
         }
         return sb.toString();
     }
 
+    private static String encodeCursor(long id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Long.toString(id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Long decodeCursor(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+            return Long.parseLong(decoded);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("invalid cursor");
+        }
+    }
+
     private static LocalDate parseDateOrNull(String input) {
         if (input == null || input.isBlank()) {
             return null;
@@ -2,5 +2,4 @@ package com.wh.reputation.review;
 
 import java.util.List;
 
-public record ReviewsPageDto(int page, int pageSize, long total, List<ReviewListItemDto> items) {}
-
+public record ReviewsPageDto(int page, int pageSize, long total, List<ReviewListItemDto> items, String nextCursor) {}
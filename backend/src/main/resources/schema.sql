@@ -38,6 +38,9 @@ CREATE TABLE IF NOT EXISTS review (
   content_raw TEXT NOT NULL,
   content_clean TEXT NOT NULL,
   tokens_json JSON NULL,
+  tokens_bin BLOB NULL,
+  analyzed_at DATETIME(3) NULL,
+  keyword_sig BIGINT NULL,
   review_time DATETIME NULL,
   like_count INT NULL,
   batch_id VARCHAR(64) NULL,
@@ -45,10 +48,14 @@ CREATE TABLE IF NOT EXISTS review (
   overall_sentiment_label VARCHAR(8) NOT NULL DEFAULT 'NEU',
   overall_sentiment_score DOUBLE NOT NULL DEFAULT 0.0,
   created_at DATETIME NOT NULL,
+  effective_time DATETIME GENERATED ALWAYS AS (coalesce(review_time, created_at)) STORED,
   INDEX idx_review_product_time (product_id, review_time),
+  INDEX idx_review_product_effective (product_id, effective_time, overall_sentiment_label),
   INDEX idx_review_platform (platform_id),
   INDEX idx_review_overall_sent (overall_sentiment_label),
-  INDEX idx_review_batch (batch_id)
+  INDEX idx_review_batch (batch_id),
+  INDEX idx_review_product_analyzed (product_id, analyzed_at),
+  INDEX idx_review_product_keyword_sig (product_id, keyword_sig)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
 
 SET @tokens_json_exists := (
@@ -66,6 +73,57 @@ PREPARE stmt FROM @tokens_json_sql;
 EXECUTE stmt;
 DEALLOCATE PREPARE stmt;
 
+SET @tokens_bin_exists := (
+  SELECT COUNT(*)
+  FROM INFORMATION_SCHEMA.COLUMNS
+  WHERE TABLE_SCHEMA = @db
+    AND TABLE_NAME = 'review'
+    AND COLUMN_NAME = 'tokens_bin'
+);
+SET @tokens_bin_sql := IF(@tokens_bin_exists = 0,
+  'ALTER TABLE review ADD COLUMN tokens_bin BLOB NULL AFTER tokens_json',
+  'SELECT 1'
+);
+PREPARE stmt FROM @tokens_bin_sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @analyzed_at_exists := (
+  SELECT COUNT(*)
+  FROM INFORMATION_SCHEMA.COLUMNS
+  WHERE TABLE_SCHEMA = @db
+    AND TABLE_NAME = 'review'
+    AND COLUMN_NAME = 'analyzed_at'
+);
+SET @analyzed_at_sql := IF(@analyzed_at_exists = 0,
+  'ALTER TABLE review ADD COLUMN analyzed_at DATETIME(3) NULL AFTER tokens_bin, ADD INDEX idx_review_product_analyzed (product_id, analyzed_at)',
+  'SELECT 1'
+);
+PREPARE stmt FROM @analyzed_at_sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @keyword_sig_exists := (
+  SELECT COUNT(*)
+  FROM INFORMATION_SCHEMA.COLUMNS
+  WHERE TABLE_SCHEMA = @db
+    AND TABLE_NAME = 'review'
+    AND COLUMN_NAME = 'keyword_sig'
+);
+SET @keyword_sig_sql := IF(@keyword_sig_exists = 0,
+  'ALTER TABLE review ADD COLUMN keyword_sig BIGINT NULL AFTER analyzed_at, ADD INDEX idx_review_product_keyword_sig (product_id, keyword_sig)',
+  'SELECT 1'
+);
+PREPARE stmt FROM @keyword_sig_sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+CREATE TABLE IF NOT EXISTS term_dictionary (
+  id INT PRIMARY KEY AUTO_INCREMENT,
+  term VARCHAR(128) COLLATE utf8mb4_bin NOT NULL UNIQUE,
+  created_at DATETIME NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+
 SET @batch_id_exists := (
   SELECT COUNT(*)
   FROM INFORMATION_SCHEMA.COLUMNS
@@ -81,6 +139,36 @@ PREPARE stmt FROM @batch_id_sql;
 EXECUTE stmt;
 DEALLOCATE PREPARE stmt;
 
+SET @effective_time_exists := (
+  SELECT COUNT(*)
+  FROM INFORMATION_SCHEMA.COLUMNS
+  WHERE TABLE_SCHEMA = @db
+    AND TABLE_NAME = 'review'
+    AND COLUMN_NAME = 'effective_time'
+);
+SET @effective_time_sql := IF(@effective_time_exists = 0,
+  'ALTER TABLE review ADD COLUMN effective_time DATETIME GENERATED ALWAYS AS (coalesce(review_time, created_at)) STORED',
+  'SELECT 1'
+);
+PREPARE stmt FROM @effective_time_sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @effective_index_exists := (
+  SELECT COUNT(*)
+  FROM INFORMATION_SCHEMA.STATISTICS
+  WHERE TABLE_SCHEMA = @db
+    AND TABLE_NAME = 'review'
+    AND INDEX_NAME = 'idx_review_product_effective'
+);
+SET @effective_index_sql := IF(@effective_index_exists = 0,
+  'ALTER TABLE review ADD INDEX idx_review_product_effective (product_id, effective_time, overall_sentiment_label)',
+  'SELECT 1'
+);
+PREPARE stmt FROM @effective_index_sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
 CREATE TABLE IF NOT EXISTS aspect (
   id BIGINT PRIMARY KEY AUTO_INCREMENT,
   name VARCHAR(32) UNIQUE NOT NULL,
@@ -116,6 +204,59 @@ CREATE TABLE IF NOT EXISTS topic_result (
   INDEX idx_topic_created (product_id, created_at)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
 
+CREATE TABLE IF NOT EXISTS topic_model (
+  product_id BIGINT PRIMARY KEY,
+  topic_count INT NOT NULL,
+  term_count INT NOT NULL DEFAULT 0,
+  trained_review_id BIGINT NOT NULL DEFAULT 0,
+  inferred_review_id BIGINT NOT NULL DEFAULT 0,
+  inferred_at DATETIME(3) NULL,
+  docs_seen BIGINT NOT NULL DEFAULT 0,
+  model_bin LONGBLOB NULL,
+  updated_at DATETIME NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+
+SET @inferred_review_id_exists := (
+  SELECT COUNT(*)
+  FROM INFORMATION_SCHEMA.COLUMNS
+  WHERE TABLE_SCHEMA = @db
+    AND TABLE_NAME = 'topic_model'
+    AND COLUMN_NAME = 'inferred_review_id'
+);
+SET @inferred_review_id_sql := IF(@inferred_review_id_exists = 0,
+  'ALTER TABLE topic_model ADD COLUMN inferred_review_id BIGINT NOT NULL DEFAULT 0 AFTER trained_review_id, ADD COLUMN inferred_at DATETIME(3) NULL AFTER inferred_review_id',
+  'SELECT 1'
+);
+PREPARE stmt FROM @inferred_review_id_sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+CREATE TABLE IF NOT EXISTS review_topic (
+  review_id BIGINT NOT NULL,
+  topic_id INT NOT NULL,
+  product_id BIGINT NOT NULL,
+  weight DOUBLE NOT NULL,
+  model_version BIGINT NOT NULL DEFAULT 0,
+  PRIMARY KEY (review_id, topic_id),
+  INDEX idx_review_topic_product (product_id, topic_id, weight),
+  INDEX idx_review_topic_version (product_id, model_version)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+
+SET @review_topic_version_exists := (
+  SELECT COUNT(*)
+  FROM INFORMATION_SCHEMA.COLUMNS
+  WHERE TABLE_SCHEMA = @db
+    AND TABLE_NAME = 'review_topic'
+    AND COLUMN_NAME = 'model_version'
+);
+SET @review_topic_version_sql := IF(@review_topic_version_exists = 0,
+  'ALTER TABLE review_topic ADD COLUMN model_version BIGINT NOT NULL DEFAULT 0, ADD INDEX idx_review_topic_version (product_id, model_version)',
+  'SELECT 1'
+);
+PREPARE stmt FROM @review_topic_version_sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
 CREATE TABLE IF NOT EXISTS `cluster` (
   id BIGINT PRIMARY KEY AUTO_INCREMENT,
   product_id BIGINT NOT NULL,
@@ -139,6 +280,43 @@ CREATE TABLE IF NOT EXISTS review_cluster (
   INDEX idx_rc_cluster (cluster_id)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
 
+CREATE TABLE IF NOT EXISTS latest_result (
+  kind VARCHAR(16) NOT NULL,
+  product_id BIGINT NOT NULL,
+  range_key VARCHAR(32) NOT NULL,
+  start_date DATE NULL,
+  end_date DATE NULL,
+  result_id BIGINT NULL,
+  created_at DATETIME NOT NULL,
+  PRIMARY KEY (kind, product_id, range_key)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+
+INSERT IGNORE INTO latest_result (kind, product_id, range_key, start_date, end_date, result_id, created_at)
+SELECT 'topic',
+       tr.product_id,
+       CONCAT(IFNULL(DATE_FORMAT(tr.start_date, '%Y-%m-%d'), '*'), '~', IFNULL(DATE_FORMAT(tr.end_date, '%Y-%m-%d'), '*')),
+       tr.start_date,
+       tr.end_date,
+       tr.id,
+       tr.created_at
+FROM topic_result tr
+JOIN (
+  SELECT MAX(id) AS id
+  FROM topic_result
+  GROUP BY product_id, start_date, end_date
+) latest ON latest.id = tr.id;
+
+INSERT IGNORE INTO latest_result (kind, product_id, range_key, start_date, end_date, result_id, created_at)
+SELECT 'cluster',
+       c.product_id,
+       CONCAT(IFNULL(DATE_FORMAT(c.start_date, '%Y-%m-%d'), '*'), '~', IFNULL(DATE_FORMAT(c.end_date, '%Y-%m-%d'), '*')),
+       c.start_date,
+       c.end_date,
+       NULL,
+       MAX(c.created_at)
+FROM `cluster` c
+GROUP BY c.product_id, c.start_date, c.end_date;
+
 CREATE TABLE IF NOT EXISTS alert (
   id BIGINT PRIMARY KEY AUTO_INCREMENT,
   product_id BIGINT NOT NULL,
@@ -185,3 +363,167 @@ CREATE TABLE IF NOT EXISTS `event` (
   created_at DATETIME NOT NULL,
   INDEX idx_event_product_time (product_id, start_date, end_date)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+
+CREATE TABLE IF NOT EXISTS import_checkpoint (
+  id BIGINT PRIMARY KEY AUTO_INCREMENT,
+  file_hash VARCHAR(64) NOT NULL UNIQUE,
+  file_name VARCHAR(255) NULL,
+  batch_id VARCHAR(64) NULL,
+  line_no BIGINT NOT NULL DEFAULT 0,
+  inserted INT NOT NULL DEFAULT 0,
+  skipped INT NOT NULL DEFAULT 0,
+  errors INT NOT NULL DEFAULT 0,
+  status VARCHAR(16) NOT NULL DEFAULT 'running',
+  created_at DATETIME NOT NULL,
+  updated_at DATETIME NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+
+CREATE TABLE IF NOT EXISTS analysis_job (
+  id BIGINT PRIMARY KEY AUTO_INCREMENT,
+  job_type VARCHAR(16) NOT NULL,
+  batch_id VARCHAR(64) NULL,
+  product_id BIGINT NULL,
+  start_date DATE NULL,
+  end_date DATE NULL,
+  status VARCHAR(16) NOT NULL DEFAULT 'pending',
+  total INT NOT NULL DEFAULT 0,
+  processed INT NOT NULL DEFAULT 0,
+  error VARCHAR(1024) NULL,
+  created_at DATETIME NOT NULL,
+  started_at DATETIME NULL,
+  finished_at DATETIME NULL,
+  INDEX idx_analysis_job_status (status)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+
+CREATE TABLE IF NOT EXISTS pending_recompute (
+  product_id BIGINT NOT NULL,
+  range_key VARCHAR(32) NOT NULL,
+  start_date DATE NULL,
+  end_date DATE NULL,
+  requests INT NOT NULL DEFAULT 1,
+  requested_at DATETIME NOT NULL,
+  PRIMARY KEY (product_id, range_key),
+  INDEX idx_pending_recompute_requested (requested_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+
+CREATE TABLE IF NOT EXISTS review_keyword (
+  review_id BIGINT NOT NULL,
+  keyword_id BIGINT NOT NULL,
+  product_id BIGINT NOT NULL,
+  cnt INT NOT NULL DEFAULT 0,
+  sentiment_label VARCHAR(8) NOT NULL,
+  PRIMARY KEY (review_id, keyword_id),
+  INDEX idx_rk_product_keyword (product_id, keyword_id, sentiment_label, cnt),
+  INDEX idx_rk_keyword (keyword_id),
+  CONSTRAINT fk_rk_review FOREIGN KEY (review_id) REFERENCES review(id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+
+SET @keyword_table_exists := (
+  SELECT COUNT(*)
+  FROM INFORMATION_SCHEMA.TABLES
+  WHERE TABLE_SCHEMA = @db
+    AND TABLE_NAME = 'keyword'
+);
+SET @rk_keyword_fk_exists := (
+  SELECT COUNT(*)
+  FROM INFORMATION_SCHEMA.TABLE_CONSTRAINTS
+  WHERE TABLE_SCHEMA = @db
+    AND TABLE_NAME = 'review_keyword'
+    AND CONSTRAINT_NAME = 'fk_rk_keyword'
+    AND CONSTRAINT_TYPE = 'FOREIGN KEY'
+);
+SET @schema_migration_exists := (
+  SELECT COUNT(*)
+  FROM INFORMATION_SCHEMA.TABLES
+  WHERE TABLE_SCHEMA = @db
+    AND TABLE_NAME = 'schema_migration'
+);
+
+CREATE TABLE IF NOT EXISTS schema_migration (
+  name VARCHAR(64) PRIMARY KEY,
+  applied_at DATETIME NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+
+INSERT IGNORE INTO schema_migration (name, applied_at)
+SELECT 'review_keyword_term_ids', NOW()
+FROM DUAL
+WHERE @schema_migration_exists = 0
+  AND @keyword_table_exists > 0
+  AND @rk_keyword_fk_exists = 0;
+
+SET @rk_keyword_migrate := @keyword_table_exists > 0 AND (
+  SELECT COUNT(*)
+  FROM schema_migration
+  WHERE name = 'review_keyword_term_ids'
+) = 0;
+SET @rk_keyword_terms_sql := IF(@rk_keyword_migrate,
+  'INSERT IGNORE INTO term_dictionary (term, created_at) SELECT k.term, k.created_at FROM keyword k ORDER BY k.id',
+  'SELECT 1'
+);
+PREPARE stmt FROM @rk_keyword_terms_sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+SET @rk_keyword_fk_sql := IF(@rk_keyword_fk_exists > 0,
+  'ALTER TABLE review_keyword DROP FOREIGN KEY fk_rk_keyword',
+  'SELECT 1'
+);
+PREPARE stmt FROM @rk_keyword_fk_sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+START TRANSACTION;
+SET @rk_keyword_remap_sql := IF(@rk_keyword_migrate,
+  'UPDATE review_keyword rk JOIN keyword k ON k.id = rk.keyword_id JOIN term_dictionary td ON td.term = k.term COLLATE utf8mb4_bin SET rk.keyword_id = -td.id',
+  'SELECT 1'
+);
+PREPARE stmt FROM @rk_keyword_remap_sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+SET @rk_keyword_unmapped_sql := IF(@rk_keyword_migrate,
+  'DELETE FROM review_keyword WHERE keyword_id > 0',
+  'SELECT 1'
+);
+PREPARE stmt FROM @rk_keyword_unmapped_sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+SET @rk_keyword_flip_sql := IF(@rk_keyword_migrate,
+  'UPDATE review_keyword SET keyword_id = -keyword_id WHERE keyword_id < 0',
+  'SELECT 1'
+);
+PREPARE stmt FROM @rk_keyword_flip_sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+SET @rk_keyword_done_sql := IF(@rk_keyword_migrate,
+  'INSERT INTO schema_migration (name, applied_at) VALUES (''review_keyword_term_ids'', NOW())',
+  'SELECT 1'
+);
+PREPARE stmt FROM @rk_keyword_done_sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+COMMIT;
+
+SET @keyword_drop_sql := IF(@keyword_table_exists > 0 AND (
+    SELECT COUNT(*)
+    FROM schema_migration
+    WHERE name = 'review_keyword_term_ids'
+  ) > 0,
+  'DROP TABLE IF EXISTS keyword',
+  'SELECT 1'
+);
+PREPARE stmt FROM @keyword_drop_sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+CREATE TABLE IF NOT EXISTS daily_sentiment_rollup (
+  product_id BIGINT NOT NULL,
+  platform_id BIGINT NOT NULL,
+  aspect_id BIGINT NOT NULL DEFAULT 0,
+  stat_date DATE NOT NULL,
+  total INT NOT NULL DEFAULT 0,
+  pos_cnt INT NOT NULL DEFAULT 0,
+  neu_cnt INT NOT NULL DEFAULT 0,
+  neg_cnt INT NOT NULL DEFAULT 0,
+  score_sum DOUBLE NOT NULL DEFAULT 0.0,
+  updated_at DATETIME NOT NULL,
+  PRIMARY KEY (product_id, aspect_id, stat_date, platform_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
@@ -0,0 +1,86 @@
+-- Benchmark: coalesce(review_time, created_at) vs review.effective_time
+--
+-- Usage (against a scratch database, never production):
+--   mysql -uroot -p reputation_bench < scripts/benchmark_effective_time.sql > bench.txt
+--
+-- Builds a 5,000,000-row copy of the review table (bench_review) spread over
+-- 50 products and ~2 years, with ~20% of rows missing review_time so the
+-- coalesce fallback matters. It then runs the date-window queries used by
+-- the dashboard, keyword and cluster/topic loaders twice: once on the old
+-- expression and once on the generated column. Compare the EXPLAIN ANALYZE
+-- output: the old form reads every row of the product (type=ref on
+-- product_id only, rows filtered per row), the new form is a range scan
+-- on idx_bench_product_effective and, for the count query, covering.
+
+SET SESSION cte_max_recursion_depth = 5000000;
+
+DROP TABLE IF EXISTS bench_review;
+CREATE TABLE bench_review (
+  id BIGINT PRIMARY KEY AUTO_INCREMENT,
+  product_id BIGINT NOT NULL,
+  review_time DATETIME NULL,
+  created_at DATETIME NOT NULL,
+  overall_sentiment_label VARCHAR(8) NOT NULL,
+  content_clean TEXT NOT NULL,
+  effective_time DATETIME GENERATED ALWAYS AS (coalesce(review_time, created_at)) STORED,
+  INDEX idx_bench_product_time (product_id, review_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+
+INSERT INTO bench_review (product_id, review_time, created_at, overall_sentiment_label, content_clean)
+WITH RECURSIVE seq(n) AS (
+  SELECT 1
+  UNION ALL
+  SELECT n + 1 FROM seq WHERE n < 5000000
+)
+SELECT 1 + (n % 50),
+       IF(n % 5 = 0, NULL, TIMESTAMP('2024-01-01') + INTERVAL (n * 7919) % (730 * 86400) SECOND),
+       TIMESTAMP('2024-01-01') + INTERVAL (n * 104729) % (730 * 86400) SECOND,
+       ELT(1 + (n % 3), 'POS', 'NEU', 'NEG'),
+       CONCAT('bench review ', n)
+FROM seq;
+
+ANALYZE TABLE bench_review;
+
+-- ---------------------------------------------------------------------------
+-- BEFORE: expression filter, only idx_bench_product_time available
+-- ---------------------------------------------------------------------------
+EXPLAIN ANALYZE
+SELECT count(*),
+       sum(CASE WHEN r.overall_sentiment_label = 'NEG' THEN 1 ELSE 0 END)
+FROM bench_review r
+WHERE r.product_id = 7
+  AND coalesce(r.review_time, r.created_at) >= '2025-03-01'
+  AND coalesce(r.review_time, r.created_at) < '2025-03-08';
+
+EXPLAIN ANALYZE
+SELECT r.id, r.content_clean
+FROM bench_review r
+WHERE r.product_id = 7
+  AND coalesce(r.review_time, r.created_at) >= '2025-03-01'
+  AND coalesce(r.review_time, r.created_at) < '2025-04-01'
+ORDER BY r.id ASC;
+
+-- ---------------------------------------------------------------------------
+-- AFTER: generated column + covering index
+-- ---------------------------------------------------------------------------
+ALTER TABLE bench_review
+  ADD INDEX idx_bench_product_effective (product_id, effective_time, overall_sentiment_label);
+ANALYZE TABLE bench_review;
+
+EXPLAIN ANALYZE
+SELECT count(*),
+       sum(CASE WHEN r.overall_sentiment_label = 'NEG' THEN 1 ELSE 0 END)
+FROM bench_review r
+WHERE r.product_id = 7
+  AND r.effective_time >= '2025-03-01'
+  AND r.effective_time < '2025-03-08';
+
+EXPLAIN ANALYZE
+SELECT r.id, r.content_clean
+FROM bench_review r
+WHERE r.product_id = 7
+  AND r.effective_time >= '2025-03-01'
+  AND r.effective_time < '2025-04-01'
+ORDER BY r.id ASC;
+
+DROP TABLE bench_review;
@@ -0,0 +1,128 @@
+-- Benchmark: topic recompute on a 1,000,000-review product
+--
+-- Usage (against a scratch database the backend is pointed at, never production):
+--   1. mysql -uroot -p reputation_bench < scripts/benchmark_topic_recompute.sql
+--   2. start the backend on reputation_bench, then time a cold recompute
+--      (trains the model and infers every review once):
+--        time curl -s 'http://localhost:8080/api/analysis/topics?productId=900001&start=2024-01-01&end=2025-12-31' > /dev/null
+--   3. append 10,000 reviews and re-analyse 5,000 existing ones, then time a
+--      warm recompute on a new window (a different window misses the cache):
+--        mysql -uroot -p reputation_bench -e 'CALL bench_topic_append(10000, 5000)'
+--        time curl -s 'http://localhost:8080/api/analysis/topics?productId=900001&start=2024-01-01&end=2025-12-30' > /dev/null
+--   4. run the checks at the bottom of this file (the "CHECKS" block) and
+--      clean up with CALL bench_topic_cleanup().
+--
+-- The product gets 1,000,000 reviews over ~2 years. Each review has 12 tokens
+-- drawn from 6 synthetic themes of 300 terms plus a shared tail of 2,000
+-- terms, so the LDA has real structure to find. tokens_json is filled and
+-- tokens_bin is left NULL, so the first run also pays term-id resolution.
+-- Step 3 should infer only the 15,000 new or re-analysed reviews: it writes
+-- review_topic for those reviews only, and the window weights and evidence
+-- come from the aggregate queries checked below. Training 10,000 reviews is
+-- ~20 model updates, under reputation.topic.max-version-lag, so no older
+-- review_topic rows are re-inferred. The topic_model row lock is held only
+-- while the 10,000 new reviews are trained.
+
+SET SESSION cte_max_recursion_depth = 1000000;
+
+INSERT IGNORE INTO platform (id, name, created_at) VALUES (900001, 'bench-topic', NOW());
+INSERT IGNORE INTO product (id, name, created_at) VALUES (900001, 'bench topic product', NOW());
+
+DROP PROCEDURE IF EXISTS bench_topic_insert;
+DROP PROCEDURE IF EXISTS bench_topic_append;
+DROP PROCEDURE IF EXISTS bench_topic_cleanup;
+
+DELIMITER //
+
+CREATE PROCEDURE bench_topic_insert(IN first_n BIGINT, IN last_n BIGINT)
+BEGIN
+  INSERT INTO review (platform_id, product_id, content_raw, content_clean, tokens_json, analyzed_at,
+                      review_time, hash, created_at)
+  WITH RECURSIVE seq(n) AS (
+    SELECT first_n
+    UNION ALL
+    SELECT n + 1 FROM seq WHERE n < last_n
+  )
+  SELECT 900001,
+         900001,
+         CONCAT('bench topic review ', n),
+         CONCAT('bench topic review ', n),
+         JSON_ARRAY(
+           CONCAT('t', n % 6, '_', (n * 7) % 300),
+           CONCAT('t', n % 6, '_', (n * 13) % 300),
+           CONCAT('t', n % 6, '_', (n * 31) % 300),
+           CONCAT('t', n % 6, '_', (n * 61) % 300),
+           CONCAT('t', n % 6, '_', (n * 97) % 300),
+           CONCAT('t', n % 6, '_', (n * 127) % 300),
+           CONCAT('t', (n + 1) % 6, '_', (n * 17) % 300),
+           CONCAT('t', (n + 1) % 6, '_', (n * 43) % 300),
+           CONCAT('s', (n * 7919) % 2000),
+           CONCAT('s', (n * 104729) % 2000),
+           CONCAT('s', (n * 1299709) % 2000),
+           CONCAT('s', (n * 15485863) % 2000)
+         ),
+         NOW(3),
+         TIMESTAMP('2024-01-01') + INTERVAL (n * 7919) % (730 * 86400) SECOND,
+         CONCAT('bench-topic-', n),
+         NOW()
+  FROM seq;
+END //
+
+CREATE PROCEDURE bench_topic_append(IN new_reviews INT, IN reanalysed INT)
+BEGIN
+  DECLARE next_n BIGINT;
+  SELECT COUNT(*) + 1 INTO next_n FROM review WHERE product_id = 900001;
+  CALL bench_topic_insert(next_n, next_n + new_reviews - 1);
+  UPDATE review
+  SET tokens_json = JSON_ARRAY_APPEND(tokens_json, '$', 's0'),
+      tokens_bin = NULL,
+      analyzed_at = NOW(3)
+  WHERE product_id = 900001
+  ORDER BY id ASC
+  LIMIT reanalysed;
+END //
+
+CREATE PROCEDURE bench_topic_cleanup()
+BEGIN
+  DELETE FROM review_topic WHERE product_id = 900001;
+  DELETE FROM topic_model WHERE product_id = 900001;
+  DELETE FROM latest_result WHERE product_id = 900001;
+  DELETE FROM topic_result WHERE product_id = 900001;
+  DELETE FROM review WHERE product_id = 900001;
+  DELETE FROM product WHERE id = 900001;
+  DELETE FROM platform WHERE id = 900001;
+END //
+
+DELIMITER ;
+
+CALL bench_topic_insert(1, 1000000);
+ANALYZE TABLE review;
+
+-- ---------------------------------------------------------------------------
+-- CHECKS (run after step 3)
+-- ---------------------------------------------------------------------------
+-- SELECT trained_review_id, inferred_review_id, inferred_at, docs_seen
+-- FROM topic_model WHERE product_id = 900001;
+--
+-- SELECT model_version, COUNT(DISTINCT review_id) FROM review_topic
+-- WHERE product_id = 900001 GROUP BY model_version;
+--
+-- EXPLAIN ANALYZE
+-- SELECT rt.topic_id, SUM(rt.weight)
+-- FROM review_topic rt
+-- JOIN review r ON r.id = rt.review_id
+-- WHERE rt.product_id = 900001
+--   AND r.effective_time >= '2024-01-01'
+--   AND r.effective_time < '2025-12-31'
+-- GROUP BY rt.topic_id;
+--
+-- EXPLAIN ANALYZE
+-- SELECT rt.review_id
+-- FROM review_topic rt
+-- JOIN review r ON r.id = rt.review_id
+-- WHERE rt.product_id = 900001
+--   AND rt.topic_id = 0
+--   AND r.effective_time >= '2024-01-01'
+--   AND r.effective_time < '2025-12-31'
+-- ORDER BY rt.weight DESC, rt.review_id DESC
+-- LIMIT 20;